@@ -1,10 +1,7 @@
 package ewm.events.service;
 
 import client.StatsClient;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import dto.HitDto;
-import dto.StatsDto;
 import ewm.categories.Category;
 import ewm.categories.service.CategoryService;
 import ewm.events.Event;
@@ -32,7 +29,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -41,6 +37,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import static ewm.events.enums.AdminAction.PUBLISH_EVENT;
@@ -62,7 +60,6 @@ public class EventServiceImpl implements EventService {
     private final LocationService locationService;
     private final RequestRepository requestRepository;
     private final StatsClient statsClient;
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${app}")
     private String app;
@@ -256,21 +253,16 @@ public class EventServiceImpl implements EventService {
                 .map(Event::getCreatedOn)
                 .min(LocalDateTime::compareTo)
                 .orElseThrow(() -> new NotFoundException("Дата начала не найдена"));
-        ResponseEntity<Object> response = statsClient.getStats(start, LocalDateTime.now(), uris, true);
+        // статистика запрашивается параллельно с подсчётом подтверждённых заявок
+        CompletableFuture<Map<String, Long>> stats = statsClient.getHitsAsync(start, LocalDateTime.now(), uris, true);
 
         List<Long> ids = events.stream().map(Event::getId).collect(Collectors.toList());
         Map<Long, Long> confirmedRequests = requestRepository.findAllByEventIdInAndStatus(ids, CONFIRMED).stream()
                 .collect(Collectors.toMap(ConfirmedRequestsDto::getEvent, ConfirmedRequestsDto::getCount));
+        Map<String, Long> views = stats.join();
         for (Event event : events) {
-            List<StatsDto> statsDto = objectMapper.convertValue(response.getBody(), new TypeReference<>() {
-            });
-            if (!statsDto.isEmpty()) {
-                result.add(eventMapper.mapModelToEventDtoWithViews(event, statsDto.getFirst().getHits(),
-                        confirmedRequests.getOrDefault(event.getId(), 0L)));
-            } else {
-                result.add(eventMapper.mapModelToEventDtoWithViews(event, 0L,
-                        confirmedRequests.getOrDefault(event.getId(), 0L)));
-            }
+            result.add(eventMapper.mapModelToEventDtoWithViews(event, views.getOrDefault("/events/" + event.getId(), 0L),
+                    confirmedRequests.getOrDefault(event.getId(), 0L)));
         }
         return result;
     }
@@ -333,24 +325,19 @@ public class EventServiceImpl implements EventService {
                 .orElseThrow(() -> new NotFoundException("Дата начала не найдена"));
 
         HitDto hitDto = new HitDto(app, request.getRequestURI(), request.getRemoteAddr(), LocalDateTime.now());
-        ResponseEntity<Object> saveResponse = statsClient.save(hitDto);
+        // при client.buffer.enabled hit уходит на сервер пакетом вместе с другими
+        statsClient.save(hitDto);
 
-        ResponseEntity<Object> response = statsClient.getStats(start, LocalDateTime.now(), uris, true);
+        CompletableFuture<Map<String, Long>> stats = statsClient.getHitsAsync(start, LocalDateTime.now(), uris, true);
 
         List<Long> ids = events.stream().map(Event::getId).collect(Collectors.toList());
         Map<Long, Long> confirmedRequests = requestRepository.findAllByEventIdInAndStatus(ids, CONFIRMED)
                 .stream()
                 .collect(Collectors.toMap(ConfirmedRequestsDto::getEvent, ConfirmedRequestsDto::getCount));
+        Map<String, Long> views = stats.join();
         for (Event event : events) {
-            List<StatsDto> statsDto = objectMapper.convertValue(response.getBody(), new TypeReference<>() {
-            });
-            if (!statsDto.isEmpty()) {
-                result.add(eventMapper.mapModelToEventShortDtoWithViews(event, statsDto.getFirst().getHits(),
-                        confirmedRequests.getOrDefault(event.getId(), 0L)));
-            } else {
-                result.add(eventMapper.mapModelToEventShortDtoWithViews(event, 0L,
-                        confirmedRequests.getOrDefault(event.getId(), 0L)));
-            }
+            result.add(eventMapper.mapModelToEventShortDtoWithViews(event, views.getOrDefault("/events/" + event.getId(), 0L),
+                    confirmedRequests.getOrDefault(event.getId(), 0L)));
         }
 
         return result;
@@ -364,39 +351,27 @@ public class EventServiceImpl implements EventService {
             throw new NotFoundException("Event is not PUBLISHED");
         }
 
-        HitDto hitDto = new HitDto(app, request.getRequestURI(), request.getRemoteAddr(), LocalDateTime.now());
-        try {
-            statsClient.save(hitDto);
-        } catch (Exception e) {
-            log.error("Error sending hit to stats service: {}", e.getMessage());
-        }
-
-        // Делаем небольшую паузу для обработки (100-200ms)
-        try {
-            Thread.sleep(150);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-
+        String uri = request.getRequestURI();
+        HitDto hitDto = new HitDto(app, uri, request.getRemoteAddr(), LocalDateTime.now());
         LocalDateTime startTime = event.getCreatedOn();
-        LocalDateTime endTime = LocalDateTime.now().plusSeconds(1);
+        // статистика запрашивается после записи hit, чтобы он попал в просмотры;
+        // подтверждённые заявки считаются, пока идут оба запроса
+        CompletableFuture<Map<String, Long>> stats = statsClient.saveAsync(hitDto)
+                .exceptionally(e -> {
+                    log.error("Error sending hit to stats service: {}", e.getMessage());
+                    return null;
+                })
+                .thenCompose(ignored -> statsClient.getHitsAsync(startTime, LocalDateTime.now().plusSeconds(1),
+                        List.of(uri), true));
+        long confirmedRequests = requestRepository.countByEventIdAndStatus(eventId, CONFIRMED);
 
         try {
-            ResponseEntity<Object> response = statsClient.getStats(startTime, endTime,
-                    List.of(request.getRequestURI()), true);
-            List<StatsDto> statsDto = objectMapper.convertValue(response.getBody(), new TypeReference<>() {
-            });
-
-            long views = statsDto.isEmpty() ? 0L : statsDto.getFirst().getHits();
-            long confirmedRequests = requestRepository.countByEventIdAndStatus(eventId, CONFIRMED);
-
+            long views = stats.join().getOrDefault(uri, 0L);
             return eventMapper.mapModelToEventDtoWithViews(event, views, confirmedRequests);
-
-        } catch (Exception e) {
+        } catch (CompletionException e) {
             log.error("Error fetching stats: {}", e.getMessage());
             // возвращаем 1, так как hit был отправлен
-            return eventMapper.mapModelToEventDtoWithViews(event, 1L,
-                    requestRepository.countByEventIdAndStatus(eventId, CONFIRMED));
+            return eventMapper.mapModelToEventDtoWithViews(event, 1L, confirmedRequests);
         }
     }
 
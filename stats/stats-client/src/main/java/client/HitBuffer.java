@@ -0,0 +1,132 @@
+package client;
+
+import dto.HitDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Буфер hit на стороне клиента: hit кладутся в неблокирующую очередь, фоновый поток отправляет
+ * накопленное пакетами раз в flush-interval-ms или сразу после набора batch-size hit.
+ * Пакет, который не удалось отправить, возвращается в очередь. При переполнении capacity hit отбрасываются.
+ * При остановке оставшиеся hit отправляются в течение close-timeout-ms: после него новый пакет
+ * не начинается, уже отправляемый ограничен таймаутом запроса.
+ */
+@Slf4j
+class HitBuffer {
+    private final Queue<HitDto> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Predicate<List<HitDto>> sender;
+    private final int batchSize;
+    private final int capacity;
+    private final long closeTimeoutMs;
+    private final ScheduledExecutorService executor;
+    // System.nanoTime, после которого сброс прекращается; задаётся при остановке
+    private volatile long deadline = Long.MAX_VALUE;
+
+    /**
+     * sender отправляет пакет и возвращает false, если его нужно повторить.
+     */
+    HitBuffer(Predicate<List<HitDto>> sender, int batchSize, int capacity, long flushIntervalMs,
+              long closeTimeoutMs) {
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.closeTimeoutMs = closeTimeoutMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "stats-client-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void add(HitDto hit) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            log.warn("Буфер hit переполнен, hit отброшен: {}", hit.getUri());
+            return;
+        }
+        queue.add(hit);
+        if (size.get() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Останавливает фоновый поток и отправляет оставшиеся hit.
+     */
+    void close() {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeoutMs);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(closeTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (size.get() > 0) {
+            log.warn("При остановке не отправлено {} hit", size.get());
+        }
+    }
+
+    /**
+     * Отправляет пакеты, пока очередь не пуста, отправка не сорвалась или не истекло время остановки.
+     */
+    private synchronized void flush() {
+        flushRequested.set(false);
+        List<HitDto> batch = new ArrayList<>(batchSize);
+        while (!isPastDeadline()) {
+            HitDto hit;
+            while (batch.size() < batchSize && (hit = queue.poll()) != null) {
+                batch.add(hit);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            size.addAndGet(-batch.size());
+            if (!send(batch)) {
+                // повтор при следующем сбросе; порядок hit для статистики не важен
+                batch.forEach(this::requeue);
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    private boolean isPastDeadline() {
+        long until = deadline;
+        return until != Long.MAX_VALUE && System.nanoTime() - until >= 0;
+    }
+
+    private boolean send(List<HitDto> batch) {
+        try {
+            return sender.test(batch);
+        } catch (RuntimeException e) {
+            log.error("Ошибка при отправке пакета hit: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void requeue(HitDto hit) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return;
+        }
+        queue.add(hit);
+    }
+}
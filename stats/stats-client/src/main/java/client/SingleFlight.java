@@ -0,0 +1,37 @@
+package client;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных запросов: пока запрос с ключом выполняется, остальные
+ * вызовы с тем же ключом получают его результат, а не отправляют свой.
+ */
+class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing.copy();
+        }
+        try {
+            call.get().whenComplete((value, e) -> {
+                inFlight.remove(key, created);
+                if (e != null) {
+                    created.completeExceptionally(e);
+                } else {
+                    created.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        // копия, чтобы вызывающий код не мог завершить общий future за остальных
+        return created.copy();
+    }
+}
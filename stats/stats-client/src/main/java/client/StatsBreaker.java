@@ -0,0 +1,107 @@
+package client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Автоматический выключатель для запросов к серверу статистики. После failure-threshold неудачных
+ * запросов подряд запросы не отправляются open-ms, затем пропускается один пробный. Неудачным считается
+ * и запрос, не уложившийся в latency-budget-ms: он сразу получает запасной результат,
+ * а сам продолжает выполняться в фоне.
+ */
+@Slf4j
+class StatsBreaker {
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long budgetMs;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    StatsBreaker(int failureThreshold, long openMs, long budgetMs) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.budgetMs = budgetMs;
+    }
+
+    /**
+     * Выполняет call, если выключатель пропускает запрос; иначе сразу возвращает whenOpen.
+     * При ошибке или превышении бюджета времени результат - fallback.
+     */
+    <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call, Supplier<T> whenOpen, Supplier<T> fallback) {
+        if (!tryAcquire()) {
+            return CompletableFuture.completedFuture(whenOpen.get());
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // исход запроса для выключателя - ответ в пределах бюджета или превышение бюджета, что раньше
+        AtomicBoolean settled = new AtomicBoolean();
+        call.get().whenComplete((value, e) -> {
+            if (e != null) {
+                log.error("Ошибка запроса к серверу статистики: {}", e.getMessage());
+            }
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            if (e != null) {
+                onFailure();
+                result.complete(fallback.get());
+            } else {
+                onSuccess();
+                result.complete(value);
+            }
+        });
+        CompletableFuture.delayedExecutor(budgetMs, TimeUnit.MILLISECONDS)
+                .execute(() -> {
+                    if (settled.compareAndSet(false, true)) {
+                        onFailure();
+                        result.complete(fallback.get());
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Пропускает ли выключатель запрос сейчас. Для пропущенного запроса нужно вызвать
+     * {@link #onSuccess} или {@link #onFailure}.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN && !probing) {
+            probing = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Сервер статистики снова отвечает, запросы возобновлены");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+            log.warn("Сервер статистики не отвечает, запросы приостановлены на {} мс",
+                    TimeUnit.NANOSECONDS.toMillis(openNanos));
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+}
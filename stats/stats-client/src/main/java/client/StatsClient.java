@@ -1,35 +1,311 @@
 package client;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 import dto.HitDto;
+import dto.StatsDeltaDto;
+import dto.StatsDto;
+import dto.TimeBucket;
+import dto.TimeSeriesDto;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
 public class StatsClient {
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final TypeReference<List<StatsDto>> STATS_TYPE = new TypeReference<>() {
+    };
+    // общий для RestTemplate и асинхронных методов; даты в формате сервера статистики
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .addModule(new JavaTimeModule()
+                    .addSerializer(LocalDateTime.class, new LocalDateTimeSerializer(DATE_TIME))
+                    .addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(DATE_TIME)))
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
     private final String serverUrl;
     private final RestTemplate rest;
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final HitBuffer hitBuffer;
+    private final StatsBreaker breaker;
+    private final Map<String, Long> lastKnownHits;
+    private final long flightGranularityMs;
+    private final SingleFlight<StatsQuery, List<StatsDto>> statsFlights;
+    private final SingleFlight<StatsQuery, Map<String, Long>> hitsFlights;
 
-    public StatsClient(@Value("${client.url}") String serverUrl) {
+    public StatsClient(@Value("${client.url}") String serverUrl,
+                       @Value("${client.connect-timeout-ms:1000}") long connectTimeoutMs,
+                       @Value("${client.read-timeout-ms:5000}") long readTimeoutMs,
+                       @Value("${client.buffer.enabled:false}") boolean buffered,
+                       @Value("${client.buffer.batch-size:500}") int batchSize,
+                       @Value("${client.buffer.capacity:100000}") int capacity,
+                       @Value("${client.buffer.flush-interval-ms:200}") long flushIntervalMs,
+                       @Value("${client.buffer.close-timeout-ms:5000}") long closeTimeoutMs,
+                       @Value("${client.breaker.enabled:false}") boolean breakerEnabled,
+                       @Value("${client.breaker.failure-threshold:5}") int failureThreshold,
+                       @Value("${client.breaker.open-ms:10000}") long openMs,
+                       @Value("${client.breaker.latency-budget-ms:300}") long latencyBudgetMs,
+                       @Value("${client.breaker.cache-size:10000}") int cacheSize,
+                       @Value("${client.single-flight.enabled:false}") boolean singleFlight,
+                       @Value("${client.single-flight.granularity-ms:1000}") long flightGranularityMs) {
         this.serverUrl = serverUrl;
         this.rest = new RestTemplate();
-        HttpClient httpClient = HttpClientBuilder.create().build();
-        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(
+                HttpClientBuilder.create()
+                        .setDefaultRequestConfig(RequestConfig.custom()
+                                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                                .build())
+                        .build());
+        requestFactory.setConnectTimeout(Duration.ofMillis(connectTimeoutMs));
         rest.setRequestFactory(requestFactory);
+        rest.getMessageConverters().replaceAll(converter -> converter instanceof MappingJackson2HttpMessageConverter
+                ? new MappingJackson2HttpMessageConverter(OBJECT_MAPPER) : converter);
+        // неблокирующий клиент для *Async: соединения HTTP/1.1 переиспользуются (keep-alive)
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.hitBuffer = buffered
+                ? new HitBuffer(this::sendBatch, batchSize, capacity, flushIntervalMs, closeTimeoutMs)
+                : null;
+        this.breaker = breakerEnabled ? new StatsBreaker(failureThreshold, openMs, latencyBudgetMs) : null;
+        // последние полученные просмотры по uri; вытесняются давно не запрашивавшиеся
+        this.lastKnownHits = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.flightGranularityMs = flightGranularityMs;
+        this.statsFlights = singleFlight ? new SingleFlight<>() : null;
+        this.hitsFlights = singleFlight ? new SingleFlight<>() : null;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (hitBuffer != null) {
+            hitBuffer.close();
+        }
+    }
+
+    /**
+     * Отправка hit без ожидания ответа. Ответ с ошибкой логируется, ошибка соединения
+     * или таймаут завершают future исключением. При client.breaker.enabled future всегда завершается
+     * успешно и не дольше бюджета времени; пока сервер недоступен, а также при ошибке соединения,
+     * ответе 5xx или 429 hit откладывается в буфер (client.buffer.enabled) или отбрасывается.
+     */
+    public CompletableFuture<Void> saveAsync(HitDto hitDto) {
+        if (breaker == null) {
+            return postHitAsync(hitDto).thenAccept(this::logSaveError);
+        }
+        return breaker.call(() -> postHitAsync(hitDto).thenAccept(response -> {
+            logSaveError(response);
+            if (response.statusCode() >= 500 || response.statusCode() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                throw new IllegalStateException("Сервер статистики не принял hit: " + response.statusCode());
+            }
+        }).whenComplete((ignored, e) -> {
+            // и в пределах бюджета, и после его превышения: запрос, не уложившийся в бюджет, продолжается в фоне
+            if (e != null) {
+                deferHit(hitDto);
+            }
+        }), () -> {
+            deferHit(hitDto);
+            return null;
+        }, () -> null);
+    }
+
+    private void logSaveError(HttpResponse<String> response) {
+        if (response.statusCode() >= 300) {
+            log.error("Ошибка при отправке hit: {}", response.body());
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> postHitAsync(HitDto hitDto) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(serverUrl + "/hit"))
+                    .timeout(readTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(OBJECT_MAPPER.writeValueAsBytes(hitDto)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void deferHit(HitDto hitDto) {
+        if (hitBuffer != null) {
+            hitBuffer.add(hitDto);
+        } else {
+            log.warn("Сервер статистики недоступен, hit не отправлен: {}", hitDto.getUri());
+        }
+    }
+
+    /**
+     * Статистика без блокировки потока. При ответе с ошибкой - пустой список, ошибка соединения
+     * или таймаут завершают future исключением.
+     */
+    public CompletableFuture<List<StatsDto>> getStatsAsync(LocalDateTime start, LocalDateTime end,
+                                                           List<String> uris, boolean unique) {
+        if (statsFlights == null) {
+            return fetchStatsAsync(start, end, uris, unique);
+        }
+        StatsQuery query = StatsQuery.of(start, end, uris, unique, flightGranularityMs);
+        return statsFlights.execute(query, () -> fetchStatsAsync(query.start(), query.end(), query.uris(), unique)
+                .thenApply(Collections::unmodifiableList));
+    }
+
+    private CompletableFuture<List<StatsDto>> fetchStatsAsync(LocalDateTime start, LocalDateTime end,
+                                                              List<String> uris, boolean unique) {
+        return sendStatsAsync(start, end, uris, unique, List.of(), body -> OBJECT_MAPPER.readValue(body, STATS_TYPE));
     }
 
+    /**
+     * Просмотры по uri без блокировки потока, суммарно по всем приложениям. Ответ разбирается потоково,
+     * без промежуточных StatsDto. При ответе с ошибкой - пустой результат.
+     * <p>
+     * При client.breaker.enabled ответ приходит не дольше бюджета времени: если сервер статистики
+     * недоступен, отвечает с ошибкой или не успевает, возвращаются последние известные просмотры по uris
+     * (uri без известных просмотров в результат не попадают), а запрос, превысивший бюджет,
+     * обновляет их в фоне.
+     * <p>
+     * При client.single-flight.enabled одинаковые одновременные запросы (тот же набор uri, unique и интервал,
+     * округлённый до granularity-ms: начало вниз, конец вверх) выполняются одним HTTP-запросом. Результат
+     * общий для всех ожидающих и не изменяется; он может не учитывать hit, записанные после отправки
+     * уже выполняющегося запроса.
+     */
+    public CompletableFuture<Map<String, Long>> getHitsAsync(LocalDateTime start, LocalDateTime end,
+                                                             List<String> uris, boolean unique) {
+        if (hitsFlights == null) {
+            return guardedHitsAsync(start, end, uris, unique);
+        }
+        StatsQuery query = StatsQuery.of(start, end, uris, unique, flightGranularityMs);
+        return hitsFlights.execute(query, () -> guardedHitsAsync(query.start(), query.end(), query.uris(), unique)
+                .thenApply(Collections::unmodifiableMap));
+    }
+
+    private CompletableFuture<Map<String, Long>> guardedHitsAsync(LocalDateTime start, LocalDateTime end,
+                                                                  List<String> uris, boolean unique) {
+        if (breaker == null) {
+            return fetchHitsAsync(start, end, uris, unique, Map.of());
+        }
+        return breaker.call(() -> fetchHitsAsync(start, end, uris, unique, null)
+                        .thenApply(hits -> {
+                            if (hits == null) {
+                                throw new IllegalStateException("Сервер статистики ответил ошибкой");
+                            }
+                            if (uris != null) {
+                                uris.forEach(uri -> lastKnownHits.put(hitsKey(uri, unique), hits.getOrDefault(uri, 0L)));
+                            }
+                            return hits;
+                        }),
+                () -> lastKnownHits(uris, unique),
+                () -> lastKnownHits(uris, unique));
+    }
+
+    private CompletableFuture<Map<String, Long>> fetchHitsAsync(LocalDateTime start, LocalDateTime end,
+                                                                List<String> uris, boolean unique,
+                                                                Map<String, Long> onError) {
+        return sendStatsAsync(start, end, uris, unique, onError, body -> {
+            try (JsonParser parser = OBJECT_MAPPER.createParser(body)) {
+                return readHits(parser);
+            }
+        });
+    }
+
+    private Map<String, Long> lastKnownHits(List<String> uris, boolean unique) {
+        Map<String, Long> hits = new HashMap<>();
+        if (uris != null) {
+            for (String uri : uris) {
+                Long known = lastKnownHits.get(hitsKey(uri, unique));
+                if (known != null) {
+                    hits.put(uri, known);
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static String hitsKey(String uri, boolean unique) {
+        return (unique ? "u:" : "a:") + uri;
+    }
+
+    private <T> CompletableFuture<T> sendStatsAsync(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                    boolean unique, T onError, BodyReader<T> reader) {
+        HttpRequest request = HttpRequest.newBuilder(statsUri(start, end, uris, unique))
+                .timeout(readTimeout)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        log.error("Ошибка при получении статистики: {}",
+                                new String(response.body(), StandardCharsets.UTF_8));
+                        return onError;
+                    }
+                    try {
+                        return reader.read(response.body());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Отправка hit. В режиме client.buffer.enabled hit только кладётся в буфер и отправляется
+     * позже пакетом через POST /hits, ответ - 202 Accepted.
+     */
     public ResponseEntity<Object> save(HitDto hitDto) {
+        if (hitBuffer != null) {
+            hitBuffer.add(hitDto);
+            return ResponseEntity.accepted().build();
+        }
         ResponseEntity<Object> response;
         try {
             response = rest.postForEntity(serverUrl + "/hit", hitDto, Object.class);
@@ -46,10 +322,75 @@ public class StatsClient {
         return responseBuilder.build();
     }
 
+    public ResponseEntity<Object> saveAll(List<HitDto> hitDtos) {
+        ResponseEntity<Object> response;
+        try {
+            response = rest.postForEntity(serverUrl + "/hits", hitDtos, Object.class);
+        } catch (HttpStatusCodeException e) {
+            log.error("Ошибка при пакетной отправке hit");
+            return ResponseEntity.status(e.getStatusCode()).body(e.getResponseBodyAsByteArray());
+        }
+        return ResponseEntity.status(response.getStatusCode()).build();
+    }
+
+    /**
+     * Отправка пакета из буфера с таймаутами асинхронного клиента. Пока выключатель не пропускает
+     * запросы, пакет не отправляется и остаётся в буфере.
+     */
+    private boolean sendBatch(List<HitDto> batch) {
+        if (breaker != null && !breaker.tryAcquire()) {
+            return false;
+        }
+        int status;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(serverUrl + "/hits"))
+                    .timeout(readTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(OBJECT_MAPPER.writeValueAsBytes(batch)))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            if (status >= 300 && status < 500 && status != HttpStatus.TOO_MANY_REQUESTS.value()) {
+                log.error("Пакет из {} hit отклонён сервером статистики: {}", batch.size(), response.body());
+            }
+        } catch (IOException e) {
+            log.error("Ошибка при пакетной отправке hit: {}", e.getMessage());
+            status = HttpStatus.SERVICE_UNAVAILABLE.value();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = HttpStatus.SERVICE_UNAVAILABLE.value();
+        }
+        boolean retry = status >= 500 || status == HttpStatus.TOO_MANY_REQUESTS.value();
+        if (breaker != null) {
+            if (retry) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+        return !retry;
+    }
+
     public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+        return getStats(start, end, uris, null, unique, null);
+    }
+
+    /**
+     * Топ-limit uri по числу просмотров, uris и uriPrefix необязательны.
+     */
+    public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                           String uriPrefix, Boolean unique, Integer limit) {
         StringBuilder url = new StringBuilder(serverUrl + "/stats?");
-        for (String uri : uris) {
-            url.append("&uris=").append(uri);
+        if (uris != null) {
+            for (String uri : uris) {
+                url.append("&uris=").append(uri);
+            }
+        }
+        if (uriPrefix != null) {
+            url.append("&uriPrefix=").append(uriPrefix);
+        }
+        if (limit != null) {
+            url.append("&limit=").append(limit);
         }
         url.append("&unique=").append(unique);
         url.append("&start=").append(start);
@@ -71,4 +412,147 @@ public class StatsClient {
         }
         return responseBuilder.build();
     }
+
+    /**
+     * Просмотры по uri за [start, end], суммарно по всем приложениям. При ошибке - null.
+     */
+    public Map<String, Long> getHits(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        try {
+            return rest.execute(statsUri(start, end, uris, unique), HttpMethod.GET, null, response -> {
+                try (JsonParser parser = OBJECT_MAPPER.createParser(response.getBody())) {
+                    return readHits(parser);
+                }
+            });
+        } catch (HttpStatusCodeException e) {
+            log.error("Ошибка при получении статистики: {}", e.getResponseBodyAsString());
+            return null;
+        }
+    }
+
+    /**
+     * Прирост просмотров после since (null - только текущий watermark). При ошибке - null.
+     */
+    public StatsDeltaDto getDelta(String since) {
+        String url = serverUrl + "/stats/delta" + (since != null ? "?since=" + since : "");
+        try {
+            return rest.getForObject(url, StatsDeltaDto.class);
+        } catch (HttpStatusCodeException e) {
+            log.error("Ошибка при получении прироста просмотров: {}", e.getResponseBodyAsString());
+            return null;
+        }
+    }
+
+    public List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             TimeBucket bucket, boolean unique) {
+        URI url = URI.create(statsQuery("/stats/timeseries", start, end, uris, unique)
+                .append("&bucket=").append(bucket)
+                .toString());
+        try {
+            List<TimeSeriesDto> series = rest.exchange(url, HttpMethod.GET, null,
+                    new ParameterizedTypeReference<List<TimeSeriesDto>>() {
+                    }).getBody();
+            return series != null ? series : List.of();
+        } catch (HttpStatusCodeException e) {
+            log.error("Ошибка при получении временного ряда: {}", e.getResponseBodyAsString());
+            return List.of();
+        }
+    }
+
+    /**
+     * k самых просматриваемых uri за последние window минут.
+     */
+    public List<StatsDto> getTrending(int window, int k) {
+        String url = serverUrl + "/stats/trending?window=" + window + "&k=" + k;
+        try {
+            List<StatsDto> trending = rest.exchange(url, HttpMethod.GET, null,
+                    new ParameterizedTypeReference<List<StatsDto>>() {
+                    }).getBody();
+            return trending != null ? trending : List.of();
+        } catch (HttpStatusCodeException e) {
+            log.error("Ошибка при получении популярных uri: {}", e.getResponseBodyAsString());
+            return List.of();
+        }
+    }
+
+    private URI statsUri(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return URI.create(statsQuery("/stats", start, end, uris, unique).toString());
+    }
+
+    /**
+     * Адрес запроса статистики с закодированными uri и датами в формате сервера.
+     */
+    private StringBuilder statsQuery(String path, LocalDateTime start, LocalDateTime end, List<String> uris,
+                                     boolean unique) {
+        StringBuilder url = new StringBuilder(serverUrl + path + "?");
+        if (uris != null) {
+            for (String uri : uris) {
+                url.append("&uris=").append(encode(uri));
+            }
+        }
+        url.append("&unique=").append(unique);
+        url.append("&start=").append(encode(DATE_TIME.format(start)));
+        url.append("&end=").append(encode(DATE_TIME.format(end)));
+        return url;
+    }
+
+    /**
+     * Суммирует hits по uri из массива StatsDto, не создавая объектов для элементов.
+     */
+    private static Map<String, Long> readHits(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Ожидался массив статистики");
+        }
+        Map<String, Long> hits = new HashMap<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String uri = null;
+            long count = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("uri".equals(field)) {
+                    uri = parser.getText();
+                } else if ("hits".equals(field)) {
+                    count = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (uri != null) {
+                hits.merge(uri, count, Long::sum);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Ключ объединения запросов: uri без повторов в порядке сортировки, интервал округлён до granularityMs.
+     */
+    private record StatsQuery(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        static StatsQuery of(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             long granularityMs) {
+            return new StatsQuery(round(start, granularityMs, false), round(end, granularityMs, true),
+                    uris != null ? List.copyOf(new TreeSet<>(uris)) : null, unique);
+        }
+
+        private static LocalDateTime round(LocalDateTime time, long granularityMs, boolean up) {
+            if (granularityMs <= 0) {
+                return time;
+            }
+            long millis = time.toInstant(ZoneOffset.UTC).toEpochMilli();
+            long rounded = Math.floorDiv(millis, granularityMs) * granularityMs;
+            if (up && rounded < millis) {
+                rounded += granularityMs;
+            }
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(rounded), ZoneOffset.UTC);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(byte[] body) throws IOException;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
 }
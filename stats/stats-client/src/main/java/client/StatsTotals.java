@@ -0,0 +1,66 @@
+package client;
+
+import dto.StatsDeltaDto;
+import dto.StatsDto;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Итоги просмотров по uri с момента origin, которые поддерживаются локально: итог uri запрашивается
+ * через GET /stats один раз, дальше к нему прибавляется прирост из GET /stats/delta.
+ * При reset (сервер перезапущен или watermark устарел) итоги запрашиваются заново. Hit, записанные
+ * между получением watermark и первым запросом итога uri, могут быть учтены дважды.
+ * Считаются все просмотры (unique=false).
+ */
+public class StatsTotals {
+    private final StatsClient client;
+    private final LocalDateTime origin;
+    private final Map<String, Long> totals = new HashMap<>();
+    private String watermark;
+
+    public StatsTotals(StatsClient client, LocalDateTime origin) {
+        this.client = client;
+        this.origin = origin;
+    }
+
+    /**
+     * Текущие итоги по uris. Если сервер статистики недоступен, возвращаются последние известные итоги.
+     */
+    public synchronized Map<String, Long> getTotals(Collection<String> uris) {
+        refresh();
+        List<String> missing = uris.stream()
+                .filter(uri -> !totals.containsKey(uri))
+                .distinct()
+                .toList();
+        if (!missing.isEmpty() && watermark != null) {
+            Map<String, Long> loaded = client.getHits(origin, LocalDateTime.now(), missing, false);
+            if (loaded != null) {
+                missing.forEach(uri -> totals.put(uri, loaded.getOrDefault(uri, 0L)));
+            }
+        }
+        Map<String, Long> result = new HashMap<>();
+        for (String uri : uris) {
+            result.put(uri, totals.getOrDefault(uri, 0L));
+        }
+        return result;
+    }
+
+    private void refresh() {
+        StatsDeltaDto delta = client.getDelta(watermark);
+        if (delta == null) {
+            return;
+        }
+        if (delta.isReset()) {
+            totals.clear();
+        } else {
+            for (StatsDto dto : delta.getHits()) {
+                totals.computeIfPresent(dto.getUri(), (uri, hits) -> hits + dto.getHits());
+            }
+        }
+        watermark = delta.getWatermark();
+    }
+}
@@ -0,0 +1,74 @@
+package client;
+
+import dto.HitDto;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HitBufferTest {
+
+    @Test
+    void requeuesFailedBatch() {
+        AtomicInteger attempts = new AtomicInteger();
+        List<HitDto> sent = new CopyOnWriteArrayList<>();
+        HitBuffer buffer = new HitBuffer(batch -> {
+            if (attempts.incrementAndGet() == 1) {
+                return false;
+            }
+            sent.addAll(batch);
+            return true;
+        }, 10, 100, 50, 1_000);
+
+        for (int i = 0; i < 3; i++) {
+            buffer.add(hit(i));
+        }
+        long waitUntil = System.nanoTime() + 2_000_000_000L;
+        while (sent.size() < 3 && System.nanoTime() < waitUntil) {
+            sleep(10);
+        }
+        buffer.close();
+
+        assertThat(attempts.get()).isGreaterThan(1);
+
+        assertThat(sent).hasSize(3);
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void closeStopsAfterTimeout() {
+        AtomicInteger sent = new AtomicInteger();
+        HitBuffer buffer = new HitBuffer(batch -> {
+            sleep(100);
+            sent.addAndGet(batch.size());
+            return true;
+        }, 1, 1_000, 60_000, 300);
+
+        for (int i = 0; i < 100; i++) {
+            buffer.add(hit(i));
+        }
+        long startedAt = System.nanoTime();
+        buffer.close();
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+        assertThat(elapsedMs).isLessThan(2_000);
+        assertThat(buffer.size()).isPositive();
+        assertThat(sent.get() + buffer.size()).isEqualTo(100);
+    }
+
+    private static HitDto hit(int i) {
+        return new HitDto("ewm-main-service", "/events/" + i, "10.0.0.1", LocalDateTime.now());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
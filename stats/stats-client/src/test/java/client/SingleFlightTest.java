@@ -0,0 +1,89 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void sharesResultOfInFlightCall() {
+        CompletableFuture<Integer> response = new CompletableFuture<>();
+
+        CompletableFuture<Integer> first = singleFlight.execute("stats", () -> call(response));
+        CompletableFuture<Integer> second = singleFlight.execute("stats", () -> call(new CompletableFuture<>()));
+        response.complete(42);
+
+        assertThat(first.join()).isEqualTo(42);
+        assertThat(second.join()).isEqualTo(42);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void callsAgainAfterCompletion() {
+        singleFlight.execute("stats", () -> call(CompletableFuture.completedFuture(1))).join();
+
+        Integer second = singleFlight.execute("stats", () -> call(CompletableFuture.completedFuture(2))).join();
+
+        assertThat(second).isEqualTo(2);
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void doesNotShareDifferentKeys() {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        singleFlight.execute("a", () -> call(first));
+
+        Integer second = singleFlight.execute("b", () -> call(CompletableFuture.completedFuture(2))).join();
+
+        assertThat(second).isEqualTo(2);
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void sharesFailureAndForgetsIt() {
+        CompletableFuture<Integer> response = new CompletableFuture<>();
+        CompletableFuture<Integer> first = singleFlight.execute("stats", () -> call(response));
+        CompletableFuture<Integer> second = singleFlight.execute("stats", () -> call(new CompletableFuture<>()));
+        response.completeExceptionally(new IllegalStateException("503"));
+
+        assertThatThrownBy(first::join).isInstanceOf(CompletionException.class);
+        assertThatThrownBy(second::join).isInstanceOf(CompletionException.class);
+        assertThat(singleFlight.execute("stats", () -> call(CompletableFuture.completedFuture(3))).join())
+                .isEqualTo(3);
+    }
+
+    @Test
+    void callerCannotCompleteSharedResult() {
+        CompletableFuture<Integer> response = new CompletableFuture<>();
+        CompletableFuture<Integer> first = singleFlight.execute("stats", () -> call(response));
+        CompletableFuture<Integer> second = singleFlight.execute("stats", () -> call(new CompletableFuture<>()));
+
+        first.complete(-1);
+        response.complete(42);
+
+        assertThat(second.join()).isEqualTo(42);
+    }
+
+    @Test
+    void forgetsCallThatThrows() {
+        assertThatThrownBy(() -> singleFlight.execute("stats", () -> {
+            throw new IllegalStateException("ошибка");
+        }).join()).isInstanceOf(CompletionException.class);
+
+        assertThat(singleFlight.execute("stats", () -> call(CompletableFuture.completedFuture(1))).join())
+                .isEqualTo(1);
+    }
+
+    private CompletableFuture<Integer> call(CompletableFuture<Integer> response) {
+        calls.incrementAndGet();
+        return response;
+    }
+}
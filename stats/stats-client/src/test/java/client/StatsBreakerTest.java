@@ -0,0 +1,82 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsBreakerTest {
+
+    @Test
+    void opensAfterThresholdAndProbesAfterOpenPeriod() throws InterruptedException {
+        StatsBreaker breaker = new StatsBreaker(2, 100, 1_000);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        Thread.sleep(150);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).as("пробный запрос один").isFalse();
+        breaker.onSuccess();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedProbeOpensAgain() throws InterruptedException {
+        StatsBreaker breaker = new StatsBreaker(1, 100, 1_000);
+        breaker.onFailure();
+        Thread.sleep(150);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void successResetsFailureCount() {
+        StatsBreaker breaker = new StatsBreaker(2, 60_000, 1_000);
+
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void returnsFallbackOnErrorAndWhenOpenWithoutCalling() {
+        StatsBreaker breaker = new StatsBreaker(1, 60_000, 1_000);
+        AtomicInteger calls = new AtomicInteger();
+
+        String failed = breaker.<String>call(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("503"));
+        }, () -> "открыт", () -> "запасной").join();
+        String open = breaker.<String>call(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("ответ");
+        }, () -> "открыт", () -> "запасной").join();
+
+        assertThat(failed).isEqualTo("запасной");
+        assertThat(open).isEqualTo("открыт");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void countsSlowCallAsFailure() {
+        StatsBreaker breaker = new StatsBreaker(1, 60_000, 50);
+        CompletableFuture<String> slow = new CompletableFuture<>();
+
+        String result = breaker.call(() -> slow, () -> "открыт", () -> "запасной").join();
+        slow.complete("поздний ответ");
+
+        assertThat(result).isEqualTo("запасной");
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+}
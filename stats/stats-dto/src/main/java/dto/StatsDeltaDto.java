@@ -0,0 +1,14 @@
+package dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsDeltaDto {
+    private List<StatsDto> hits;
+    private String watermark;
+    private boolean reset;
+}
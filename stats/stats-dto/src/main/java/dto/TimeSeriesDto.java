@@ -0,0 +1,14 @@
+package dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TimeSeriesDto {
+    private String app;
+    private String uri;
+    private List<TimeSeriesPointDto> points;
+}
@@ -24,6 +24,18 @@ public class ErrorHandler {
                 .build();
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public ErrorResponse handleTooManyRequests(final TooManyRequestsException e) {
+        log.warn("Запрос отклонён из-за перегрузки {}", e.getMessage());
+        return ErrorResponse.builder()
+                .message(e.getMessage())
+                .reason("Сервер перегружен")
+                .status("TOO_MANY_REQUESTS")
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleThrowable(final InternalServerErrorException e) {
@@ -1,8 +1,10 @@
 package ewm.stats;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnTransformer;
 
 import java.time.LocalDateTime;
 
@@ -18,16 +20,31 @@ public class EndpointHit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
-    @Column(nullable = false)
+    @JsonIgnore
+    @Column(name = "app_id", nullable = false)
+    private int appId;
+
+    @JsonIgnore
+    @Column(name = "uri_id", nullable = false)
+    private int uriId;
+
+    @Transient
     private String app;
 
-    @Column(nullable = false)
+    @Transient
     private String uri;
 
     @Column(nullable = false)
+    @ColumnTransformer(read = "host(ip)", write = "CAST(? AS inet)")
     private String ip;
 
     @Column(nullable = false)
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime timestamp;
+
+    // сколько одинаковых hit (app, uri, ip) свёрнуто в строку, см. HitDeduplicator
+    @JsonIgnore
+    @Builder.Default
+    @Column(name = "hit_count", nullable = false)
+    private int hitCount = 1;
 }
@@ -0,0 +1,78 @@
+package ewm.stats;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class EndpointHitBatchRepository {
+    private static final String INSERT_HIT = "INSERT INTO endpoint_hits (app_id, uri_id, ip, timestamp, hit_count) " +
+            "VALUES (?, ?, CAST(? AS inet), ?, ?)";
+
+    // последняя строка с тем же (app, uri, ip), начатая не раньше чем за окно до hit
+    private static final String INCREMENT_RECENT = "UPDATE endpoint_hits SET hit_count = hit_count + ? " +
+            "WHERE (id, timestamp) = (" +
+            "SELECT id, timestamp FROM endpoint_hits " +
+            "WHERE uri_id = ? AND app_id = ? AND ip = CAST(? AS inet) AND timestamp BETWEEN ? AND ? " +
+            "ORDER BY timestamp DESC LIMIT 1)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${stats.hits.batch-size:500}")
+    private int batchSize;
+
+    public void saveAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setString(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+            ps.setInt(5, hit.getHitCount());
+        });
+    }
+
+    /**
+     * Прибавляет hitCount каждого hit к строке того же (app, uri, ip), начатой в пределах window
+     * до него. Возвращает для каждого hit, нашлась ли такая строка.
+     */
+    public boolean[] incrementRecent(List<EndpointHit> hits, Duration window) {
+        boolean[] merged = new boolean[hits.size()];
+        if (hits.isEmpty()) {
+            return merged;
+        }
+        int[][] updated = jdbcTemplate.batchUpdate(INCREMENT_RECENT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getHitCount());
+            ps.setInt(2, hit.getUriId());
+            ps.setInt(3, hit.getAppId());
+            ps.setString(4, hit.getIp());
+            ps.setTimestamp(5, Timestamp.valueOf(hit.getTimestamp().minus(window)));
+            ps.setTimestamp(6, Timestamp.valueOf(hit.getTimestamp()));
+        });
+        int i = 0;
+        for (int[] batch : updated) {
+            for (int rows : batch) {
+                merged[i++] = rows > 0;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * То же для одного hit; возвращает id строки, к которой он прибавлен, или null.
+     */
+    public Long incrementRecent(EndpointHit hit, Duration window) {
+        List<Long> ids = jdbcTemplate.queryForList(INCREMENT_RECENT + " RETURNING id", Long.class,
+                hit.getHitCount(), hit.getUriId(), hit.getAppId(), hit.getIp(),
+                Timestamp.valueOf(hit.getTimestamp().minus(window)), Timestamp.valueOf(hit.getTimestamp()));
+        return ids.isEmpty() ? null : ids.getFirst();
+    }
+}
@@ -1,13 +1,22 @@
 package ewm.stats;
 
 import dto.HitDto;
+import dto.StatsDeltaDto;
 import dto.StatsDto;
+import dto.TimeBucket;
+import dto.TimeSeriesDto;
+import ewm.stats.admission.HitAdmission;
+import ewm.stats.export.ExportFormat;
+import ewm.stats.export.HitExporter;
 import ewm.stats.service.EndpointHitService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -18,20 +27,73 @@ import java.util.List;
 @RequiredArgsConstructor
 public class EndpointHitController {
     private final EndpointHitService service;
+    private final HitExporter hitExporter;
+    private final HitAdmission hitAdmission;
 
     @GetMapping("/stats")
     public List<StatsDto> getStats(@RequestParam LocalDateTime start,
                                    @RequestParam LocalDateTime end,
                                    @RequestParam(required = false) List<String> uris,
-                                   @RequestParam(defaultValue = "false") boolean unique) {
-        log.info("Получение статистики start={}, end={}, uris={}, unique={}", start, end, uris, unique);
-        return service.getStats(start, end, uris, unique);
+                                   @RequestParam(required = false) String uriPrefix,
+                                   @RequestParam(defaultValue = "false") boolean unique,
+                                   @RequestParam(defaultValue = "false") boolean exact,
+                                   @RequestParam(required = false) Integer limit) {
+        log.info("Получение статистики start={}, end={}, uris={}, uriPrefix={}, unique={}, exact={}, limit={}",
+                start, end, uris, uriPrefix, unique, exact, limit);
+        return service.getStats(start, end, uris, uriPrefix, unique, exact, limit);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public List<TimeSeriesDto> getTimeSeries(@RequestParam LocalDateTime start,
+                                             @RequestParam LocalDateTime end,
+                                             @RequestParam(required = false) List<String> uris,
+                                             @RequestParam(defaultValue = "HOUR") TimeBucket bucket,
+                                             @RequestParam(defaultValue = "false") boolean unique) {
+        log.info("Получение временного ряда start={}, end={}, uris={}, bucket={}, unique={}",
+                start, end, uris, bucket, unique);
+        return service.getTimeSeries(start, end, uris, bucket, unique);
+    }
+
+    @GetMapping("/stats/trending")
+    public List<StatsDto> getTrending(@RequestParam(defaultValue = "5") int window,
+                                      @RequestParam(defaultValue = "10") int k) {
+        log.info("Получение популярных uri window={}, k={}", window, k);
+        return service.getTrending(window, k);
+    }
+
+    @GetMapping("/stats/delta")
+    public StatsDeltaDto getDelta(@RequestParam(required = false) String since) {
+        log.info("Получение прироста просмотров since={}", since);
+        return service.getDelta(since);
     }
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
     public EndpointHit hit(@RequestBody @Valid HitDto hitDto) {
         log.info("Добавление просмотра события в статистику hitDto={}", hitDto);
-        return service.hit(hitDto);
+        return hitAdmission.execute(() -> service.hit(hitDto));
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void hits(@RequestBody List<@Valid HitDto> hitDtos) {
+        log.info("Пакетное добавление просмотров в статистику, количество={}", hitDtos.size());
+        hitAdmission.execute(() -> service.hitAll(hitDtos));
+    }
+
+    @GetMapping("/hits/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam LocalDateTime start,
+                                                        @RequestParam LocalDateTime end,
+                                                        @RequestParam(required = false) String app,
+                                                        @RequestParam(defaultValue = "ndjson") String format,
+                                                        @RequestParam(defaultValue = "false") boolean gzip) {
+        log.info("Выгрузка просмотров start={}, end={}, app={}, format={}, gzip={}", start, end, app, format, gzip);
+        hitExporter.validate(start, end);
+        ExportFormat exportFormat = ExportFormat.from(format);
+        String fileName = "hits." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, gzip ? "application/gzip" : exportFormat.getContentType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(out -> hitExporter.export(start, end, app, exportFormat, gzip, out));
     }
 }
@@ -1,6 +1,7 @@
 package ewm.stats;
 
 import dto.HitDto;
+import ewm.stats.dictionary.IpAddresses;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
@@ -11,7 +12,7 @@ public class EndpointHitMapper {
         return EndpointHit.builder()
                 .app(hitDto.getApp())
                 .uri(hitDto.getUri())
-                .ip(hitDto.getIp())
+                .ip(IpAddresses.normalize(hitDto.getIp()))
                 .timestamp(hitDto.getTimestamp())
                 .build();
     }
@@ -1,6 +1,6 @@
 package ewm.stats;
 
-import dto.StatsDto;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
@@ -8,37 +8,62 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 public interface EndpointHitRepository extends JpaRepository<EndpointHit, Long> {
-    @Query("SELECT new dto.StatsDto(h.app, h.uri, COUNT(h.ip)) " +
-            "FROM EndpointHit AS h " +
+    @Query(value = "SELECT h.app_id AS appId, h.uri_id AS uriId, SUM(h.hit_count) AS hits " +
+            "FROM endpoint_hits AS h " +
             "WHERE h.timestamp BETWEEN ?1 AND ?2 " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.uri) DESC")
-    List<StatsDto> getStats(LocalDateTime start, LocalDateTime end);
-
-    @Query("SELECT new dto.StatsDto(h.app, h.uri, COUNT(h.ip)) " +
-            "FROM EndpointHit AS h " +
-            "WHERE h.uri IN (?1) AND h.timestamp BETWEEN ?2 AND ?3 " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.uri) DESC")
-    List<StatsDto> getStatsWithUris(List<String> uris,
+            "GROUP BY h.app_id, h.uri_id " +
+            "ORDER BY hits DESC, h.uri_id, h.app_id", nativeQuery = true)
+    List<HitCount> getStats(LocalDateTime start, LocalDateTime end, Limit limit);
+
+    @Query(value = "SELECT h.app_id AS appId, h.uri_id AS uriId, SUM(h.hit_count) AS hits " +
+            "FROM endpoint_hits AS h " +
+            "WHERE h.uri_id IN (?1) AND h.timestamp BETWEEN ?2 AND ?3 " +
+            "GROUP BY h.app_id, h.uri_id " +
+            "ORDER BY hits DESC, h.uri_id, h.app_id", nativeQuery = true)
+    List<HitCount> getStatsWithUris(List<Integer> uriIds,
                                     LocalDateTime start,
-                                    LocalDateTime end);
+                                    LocalDateTime end,
+                                    Limit limit);
+
+    @Query(value = "SELECT h.app_id AS appId, h.uri_id AS uriId, SUM(h.hit_count) AS hits " +
+            "FROM endpoint_hits AS h " +
+            "JOIN stats_uris AS u ON u.id = h.uri_id AND u.uri LIKE ?1 ESCAPE '\\' " +
+            "WHERE h.timestamp BETWEEN ?2 AND ?3 " +
+            "GROUP BY h.app_id, h.uri_id " +
+            "ORDER BY hits DESC, h.uri_id, h.app_id", nativeQuery = true)
+    List<HitCount> getStatsWithUriPattern(String uriPattern,
+                                          LocalDateTime start,
+                                          LocalDateTime end,
+                                          Limit limit);
 
-    @Query("SELECT new dto.StatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
-            "FROM EndpointHit AS h " +
+    @Query(value = "SELECT h.app_id AS appId, h.uri_id AS uriId, COUNT(DISTINCT h.ip) AS hits " +
+            "FROM endpoint_hits AS h " +
             "WHERE h.timestamp BETWEEN ?1 AND ?2 " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<StatsDto> getUniqueStats(
+            "GROUP BY h.app_id, h.uri_id " +
+            "ORDER BY hits DESC, h.uri_id, h.app_id", nativeQuery = true)
+    List<HitCount> getUniqueStats(
             LocalDateTime start,
-            LocalDateTime end);
-
-    @Query("SELECT new dto.StatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
-            "FROM EndpointHit AS h " +
-            "WHERE h.uri IN (?1) AND h.timestamp BETWEEN ?2 AND ?3 " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<StatsDto> getUniqueStatsWithUris(List<String> uris,
+            LocalDateTime end,
+            Limit limit);
+
+    @Query(value = "SELECT h.app_id AS appId, h.uri_id AS uriId, COUNT(DISTINCT h.ip) AS hits " +
+            "FROM endpoint_hits AS h " +
+            "WHERE h.uri_id IN (?1) AND h.timestamp BETWEEN ?2 AND ?3 " +
+            "GROUP BY h.app_id, h.uri_id " +
+            "ORDER BY hits DESC, h.uri_id, h.app_id", nativeQuery = true)
+    List<HitCount> getUniqueStatsWithUris(List<Integer> uriIds,
                                           LocalDateTime start,
-                                          LocalDateTime end);
+                                          LocalDateTime end,
+                                          Limit limit);
+
+    @Query(value = "SELECT h.app_id AS appId, h.uri_id AS uriId, COUNT(DISTINCT h.ip) AS hits " +
+            "FROM endpoint_hits AS h " +
+            "JOIN stats_uris AS u ON u.id = h.uri_id AND u.uri LIKE ?1 ESCAPE '\\' " +
+            "WHERE h.timestamp BETWEEN ?2 AND ?3 " +
+            "GROUP BY h.app_id, h.uri_id " +
+            "ORDER BY hits DESC, h.uri_id, h.app_id", nativeQuery = true)
+    List<HitCount> getUniqueStatsWithUriPattern(String uriPattern,
+                                                LocalDateTime start,
+                                                LocalDateTime end,
+                                                Limit limit);
 }
@@ -0,0 +1,9 @@
+package ewm.stats;
+
+public interface HitCount {
+    int getAppId();
+
+    int getUriId();
+
+    long getHits();
+}
@@ -0,0 +1,10 @@
+package ewm.stats;
+
+import lombok.Value;
+
+@Value
+public class HitCountRow implements HitCount {
+    int appId;
+    int uriId;
+    long hits;
+}
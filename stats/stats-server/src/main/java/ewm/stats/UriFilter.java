@@ -0,0 +1,77 @@
+package ewm.stats;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Отбор uri в запросах статистики: явный список id или префикс uri, без обоих полей - все uri.
+ * Префикс не разворачивается в список id, а проверяется в SQL по справочнику stats_uris.
+ */
+public record UriFilter(Set<Integer> ids, String prefix) {
+    public static final UriFilter ALL = new UriFilter(null, null);
+
+    public static UriFilter byIds(Collection<Integer> ids) {
+        return new UriFilter(Set.copyOf(ids), null);
+    }
+
+    public static UriFilter byPrefix(String prefix) {
+        return new UriFilter(null, prefix);
+    }
+
+    public boolean isAll() {
+        return ids == null && prefix == null;
+    }
+
+    /**
+     * Ни один uri не подходит: ни одного из запрошенных uri нет в справочнике.
+     */
+    public boolean isEmpty() {
+        return ids != null && ids.isEmpty();
+    }
+
+    /**
+     * Условие для столбца с id uri, начинается с AND. Параметры - {@link #addTo}.
+     */
+    public String sql(String column) {
+        if (ids != null) {
+            return " AND " + column + " IN (:uriIds)";
+        }
+        if (prefix != null) {
+            return " AND " + column + " IN (SELECT id FROM stats_uris WHERE uri LIKE :uriPattern ESCAPE '\\')";
+        }
+        return "";
+    }
+
+    public MapSqlParameterSource addTo(MapSqlParameterSource params) {
+        return params
+                .addValue("uriIds", ids)
+                .addValue("uriPattern", prefix != null ? likePattern() : null);
+    }
+
+    /**
+     * Шаблон LIKE для префикса: спецсимволы LIKE экранируются.
+     */
+    public String likePattern() {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Проверка id для данных в памяти. Для префикса uri берётся из справочника, ответ запоминается.
+     */
+    public IntPredicate matcher(IntFunction<String> uris) {
+        if (ids != null) {
+            return ids::contains;
+        }
+        if (prefix != null) {
+            Map<Integer, Boolean> matches = new HashMap<>();
+            return uriId -> matches.computeIfAbsent(uriId, id -> uris.apply(id).startsWith(prefix));
+        }
+        return uriId -> true;
+    }
+}
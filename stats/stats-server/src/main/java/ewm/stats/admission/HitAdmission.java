@@ -0,0 +1,193 @@
+package ewm.stats.admission;
+
+import ewm.exception.BadRequestException;
+import ewm.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Ограничение числа одновременных записей hit. Сверх лимита запрос ждёт в очереди не дольше
+ * max-wait-ms, при полной очереди или по таймауту отклоняется с 429. Ожидающий запрос занимает
+ * поток Tomcat, поэтому очередь не длиннее половины server.tomcat.threads.max.
+ * Лимит подстраивается по времени записи: растёт, пока оно укладывается в target-latency-ms,
+ * и уменьшается в backoff-ratio раз при медленной записи или ошибке.
+ */
+@Slf4j
+@Component
+public class HitAdmission {
+    private final boolean enabled;
+    private final double minLimit;
+    private final double maxLimit;
+    private final int queueSize;
+    private final long maxWaitNanos;
+    private final long targetLatencyNanos;
+    private final double backoffRatio;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+    private double limit;
+    private int inFlight;
+    private int waiting;
+
+    public HitAdmission(MeterRegistry meterRegistry,
+                        @Value("${stats.admission.enabled:false}") boolean enabled,
+                        @Value("${stats.admission.initial-limit:20}") int initialLimit,
+                        @Value("${stats.admission.min-limit:1}") int minLimit,
+                        @Value("${stats.admission.max-limit:200}") int maxLimit,
+                        @Value("${stats.admission.queue-size:50}") int queueSize,
+                        @Value("${stats.admission.max-wait-ms:100}") long maxWaitMs,
+                        @Value("${stats.admission.target-latency-ms:100}") long targetLatencyMs,
+                        @Value("${stats.admission.backoff-ratio:0.9}") double backoffRatio,
+                        @Value("${server.tomcat.threads.max:200}") int maxThreads) {
+        this.enabled = enabled;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueSize = Math.min(queueSize, maxThreads / 2);
+        if (enabled && this.queueSize < queueSize) {
+            log.warn("Очередь записи hit уменьшена до {}: ожидающие запросы занимают потоки Tomcat", this.queueSize);
+        }
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        this.backoffRatio = backoffRatio;
+        Gauge.builder("stats.admission.limit", this, HitAdmission::getLimit)
+                .description("Текущий лимит одновременных записей hit")
+                .register(meterRegistry);
+        Gauge.builder("stats.admission.inflight", this, HitAdmission::getInFlight)
+                .description("Записи hit, выполняющиеся сейчас")
+                .register(meterRegistry);
+        Gauge.builder("stats.admission.queued", this, HitAdmission::getWaiting)
+                .description("Запросы hit, ожидающие в очереди")
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("stats.admission.rejected")
+                .description("Запросы hit, отклонённые из-за перегрузки")
+                .tag("reason", "queue_full")
+                .register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("stats.admission.rejected")
+                .description("Запросы hit, отклонённые из-за перегрузки")
+                .tag("reason", "timeout")
+                .register(meterRegistry);
+    }
+
+    public <T> T execute(Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        acquire();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = action.get();
+            success = true;
+            return result;
+        } catch (BadRequestException e) {
+            // некорректный запрос не говорит о состоянии БД
+            success = true;
+            throw e;
+        } finally {
+            release(System.nanoTime() - start, success);
+        }
+    }
+
+    public void execute(Runnable action) {
+        execute(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            if (waiting >= queueSize) {
+                rejectedQueueFull.increment();
+                throw new TooManyRequestsException("Очередь записи hit заполнена");
+            }
+            waiting++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejectedTimeout.increment();
+                        throw new TooManyRequestsException("Превышено время ожидания записи hit");
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejectedTimeout.increment();
+                throw new TooManyRequestsException("Ожидание записи hit прервано");
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long latencyNanos, boolean success) {
+        lock.lock();
+        try {
+            inFlight--;
+            double previous = limit;
+            if (!success || latencyNanos > targetLatencyNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight + 1 >= limit / 2) {
+                // растём, только когда лимит действительно используется
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            if ((int) limit < (int) previous) {
+                log.warn("Лимит одновременных записей hit снижен до {}", (int) limit);
+            }
+            if ((int) limit > (int) previous) {
+                released.signalAll();
+            } else {
+                released.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ewm.stats.archive;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Чтение суточного архива, записанного {@link ArchiveFileWriter}. Блоки, время которых целиком
+ * вне интервала, не читаются с диска.
+ */
+final class ArchiveFileReader {
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int TAIL_SIZE = 8 + 8 + 4 + 8 + 8 + 4;
+
+    private ArchiveFileReader() {
+    }
+
+    @FunctionalInterface
+    interface RowHandler {
+        void accept(long timestampMicros, int appId, int uriId, byte[] ip, int hitCount);
+    }
+
+    /**
+     * Сутки, итоги и справочник имён приложений и uri по id, под которыми они записаны в файле.
+     */
+    record ArchiveSummary(LocalDate day, long rows, long hits, Map<Integer, String> apps, Map<Integer, String> uris) {
+    }
+
+    static ArchiveSummary readSummary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Tail tail = readTail(channel, path);
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            header.position(8);
+            LocalDate day = LocalDate.ofEpochDay(header.getLong());
+            ByteBuffer names = read(channel, tail.dictionaryOffset(),
+                    Math.toIntExact(tail.indexOffset() - tail.dictionaryOffset()));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(names.array()))) {
+                Map<Integer, String> apps = readNames(in);
+                Map<Integer, String> uris = readNames(in);
+                return new ArchiveSummary(day, tail.rows(), tail.hits(), apps, uris);
+            }
+        }
+    }
+
+    /**
+     * Передаёт handler строки со временем в [startMicros, endMicros]. Id приложений и uri - из файла,
+     * их имена - в {@link #readSummary}.
+     */
+    static void scan(Path path, long startMicros, long endMicros, RowHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Tail tail = readTail(channel, path);
+            int blockCount = tail.blockCount();
+            ByteBuffer index = read(channel, tail.indexOffset(), blockCount * ArchiveFileWriter.BlockIndex.SIZE);
+            for (int i = 0; i < blockCount; i++) {
+                long offset = index.getLong();
+                int length = index.getInt();
+                int rows = index.getInt();
+                long minMicros = index.getLong();
+                long maxMicros = index.getLong();
+                if (maxMicros < startMicros || minMicros > endMicros) {
+                    continue;
+                }
+                ByteBuffer block = read(channel, offset, length);
+                scanBlock(block, rows, minMicros, startMicros, endMicros, handler);
+            }
+        }
+    }
+
+    private static Tail readTail(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = read(channel, 0, HEADER_SIZE);
+        if (header.getInt() != ArchiveFileWriter.MAGIC || header.getInt() != ArchiveFileWriter.VERSION) {
+            throw new IOException("Неизвестный формат архива " + path);
+        }
+        ByteBuffer tail = read(channel, channel.size() - TAIL_SIZE, TAIL_SIZE);
+        Tail result = new Tail(tail.getLong(), tail.getLong(), tail.getInt(), tail.getLong(), tail.getLong());
+        if (tail.getInt() != ArchiveFileWriter.MAGIC) {
+            throw new IOException("Повреждён архив " + path);
+        }
+        return result;
+    }
+
+    private static Map<Integer, String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<Integer, String> names = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            names.put(in.readInt(), in.readUTF());
+        }
+        return names;
+    }
+
+    private static void scanBlock(ByteBuffer compressed, int rows, long minMicros, long startMicros, long endMicros,
+                                  RowHandler handler) throws IOException {
+        Inflater inflater = new Inflater();
+        try (InputStream in = new BufferedInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(compressed.array()), inflater))) {
+            long[] micros = new long[rows];
+            long current = minMicros;
+            for (int i = 0; i < rows; i++) {
+                current += readVarLong(in);
+                micros[i] = current;
+            }
+            int[] appIds = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                appIds[i] = (int) readVarLong(in);
+            }
+            int[] uriIds = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                uriIds[i] = (int) readVarLong(in);
+            }
+            byte[][] ips = new byte[rows][];
+            for (int i = 0; i < rows; i++) {
+                ips[i] = in.readNBytes(in.read());
+            }
+            for (int i = 0; i < rows; i++) {
+                int hitCount = (int) readVarLong(in);
+                if (micros[i] >= startMicros && micros[i] <= endMicros) {
+                    handler.accept(micros[i], appIds[i], uriIds[i], ips[i], hitCount);
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Неожиданный конец архива");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private record Tail(long dictionaryOffset, long indexOffset, int blockCount, long rows, long hits) {
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Неожиданный конец блока архива");
+            }
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Некорректное число в блоке архива");
+    }
+}
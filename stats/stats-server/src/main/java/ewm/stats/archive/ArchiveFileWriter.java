@@ -0,0 +1,194 @@
+package ewm.stats.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Записывает суточный архив просмотров. Файл состоит из блоков по blockSize строк, отсортированных
+ * по времени; внутри блока данные хранятся по столбцам и сжаты deflate:
+ * <ul>
+ *     <li>время - разности соседних значений в мкс, первое - от начала блока (varint);</li>
+ *     <li>id приложения и id uri из справочников (varint);</li>
+ *     <li>ip - длина (4 или 16) и байты адреса;</li>
+ *     <li>hit_count (varint).</li>
+ * </ul>
+ * За блоками идут справочник имён приложений и uri по id из файла, чтобы архив читался и после того,
+ * как справочники в БД пересозданы, и оглавление блоков со смещением и минимальным и максимальным
+ * временем, по которому при чтении пропускаются блоки вне интервала запроса. Последние байты файла -
+ * смещения справочника и оглавления, итоги по строкам и просмотрам.
+ */
+class ArchiveFileWriter implements Closeable {
+    static final int MAGIC = 0x45574d41;
+    static final int VERSION = 2;
+
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final List<BlockIndex> blocks = new ArrayList<>();
+    private final long[] micros;
+    private final int[] appIds;
+    private final int[] uriIds;
+    private final byte[][] ips;
+    private final int[] hitCounts;
+    private final Set<Integer> usedAppIds = new TreeSet<>();
+    private final Set<Integer> usedUriIds = new TreeSet<>();
+    private int rows;
+    private long offset;
+    private long totalRows;
+    private long totalHits;
+
+    ArchiveFileWriter(Path path, LocalDate day, int blockSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        this.blockSize = blockSize;
+        this.micros = new long[blockSize];
+        this.appIds = new int[blockSize];
+        this.uriIds = new int[blockSize];
+        this.ips = new byte[blockSize][];
+        this.hitCounts = new int[blockSize];
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(day.toEpochDay());
+        offset = 16;
+    }
+
+    /**
+     * Добавляет строку; строки должны идти по неубыванию времени.
+     */
+    void append(long timestampMicros, int appId, int uriId, byte[] ip, int hitCount) throws IOException {
+        if (rows > 0 && timestampMicros < micros[rows - 1]) {
+            throw new IllegalArgumentException("Строки архива должны быть упорядочены по времени");
+        }
+        micros[rows] = timestampMicros;
+        appIds[rows] = appId;
+        uriIds[rows] = uriId;
+        ips[rows] = ip;
+        hitCounts[rows] = hitCount;
+        usedAppIds.add(appId);
+        usedUriIds.add(uriId);
+        rows++;
+        totalRows++;
+        totalHits += hitCount;
+        if (rows == blockSize) {
+            writeBlock();
+        }
+    }
+
+    long getTotalRows() {
+        return totalRows;
+    }
+
+    long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * Дописывает последний блок, справочник имён встреченных id, оглавление и сбрасывает файл на диск.
+     */
+    void finish(IntFunction<String> appNames, IntFunction<String> uriNames) throws IOException {
+        if (rows > 0) {
+            writeBlock();
+        }
+        long dictionaryOffset = offset;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream names = new DataOutputStream(bytes);
+        writeNames(names, usedAppIds, appNames);
+        writeNames(names, usedUriIds, uriNames);
+        out.write(bytes.toByteArray());
+        long indexOffset = dictionaryOffset + bytes.size();
+        for (BlockIndex block : blocks) {
+            out.writeLong(block.offset());
+            out.writeInt(block.length());
+            out.writeInt(block.rows());
+            out.writeLong(block.minMicros());
+            out.writeLong(block.maxMicros());
+        }
+        out.writeLong(dictionaryOffset);
+        out.writeLong(indexOffset);
+        out.writeInt(blocks.size());
+        out.writeLong(totalRows);
+        out.writeLong(totalHits);
+        out.writeInt(MAGIC);
+        out.flush();
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeBlock() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream block = new DeflaterOutputStream(bytes, deflater)) {
+            long previous = micros[0];
+            for (int i = 0; i < rows; i++) {
+                writeVarLong(block, micros[i] - previous);
+                previous = micros[i];
+            }
+            for (int i = 0; i < rows; i++) {
+                writeVarLong(block, appIds[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                writeVarLong(block, uriIds[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                block.write(ips[i].length);
+                block.write(ips[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                writeVarLong(block, hitCounts[i]);
+            }
+        } finally {
+            deflater.end();
+        }
+        byte[] compressed = bytes.toByteArray();
+        out.write(compressed);
+        blocks.add(new BlockIndex(offset, compressed.length, rows, micros[0], micros[rows - 1]));
+        offset += compressed.length;
+        rows = 0;
+    }
+
+    private static void writeNames(DataOutputStream out, Set<Integer> ids, IntFunction<String> names)
+            throws IOException {
+        out.writeInt(ids.size());
+        for (int id : ids) {
+            String name = names.apply(id);
+            if (name == null) {
+                throw new IllegalStateException("Нет имени для id " + id + " в справочнике");
+            }
+            out.writeInt(id);
+            out.writeUTF(name);
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    record BlockIndex(long offset, int length, int rows, long minMicros, long maxMicros) {
+        static final int SIZE = 8 + 4 + 4 + 8 + 8;
+    }
+}
@@ -0,0 +1,355 @@
+package ewm.stats.archive;
+
+import dto.TimeBucket;
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.archive.HitArchiveRepository.ArchivedDay;
+import ewm.stats.UriFilter;
+import ewm.stats.dictionary.IpAddresses;
+import ewm.stats.dictionary.StatsDictionary;
+import ewm.stats.timeseries.TimeSeriesRepository;
+import ewm.stats.timeseries.TimeSeriesRow;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Суточные архивы старых просмотров в столбцовом формате на диске. Архивированные сутки удаляются
+ * из endpoint_hits, а GET /stats по интервалу, который их затрагивает, объединяет чтение архивов
+ * с выборкой из endpoint_hits (туда могут попасть и опоздавшие hit за архивированные сутки).
+ * Так же строятся временные ряды и выгрузка.
+ * Файлы хранят имена приложений и uri, поэтому оглавление hit_archive_days восстанавливается по ним
+ * при старте, а id из файла при чтении переводятся в id текущих справочников.
+ */
+@Slf4j
+@Component
+public class HitArchive {
+    private static final DateTimeFormatter FILE_DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Pattern FILE_NAME = Pattern.compile("hits-\\d{8}\\.col");
+    private static final Comparator<HitCount> BY_HITS = Comparator.comparingLong(HitCount::getHits).reversed()
+            .thenComparingInt(HitCount::getUriId)
+            .thenComparingInt(HitCount::getAppId);
+    private static final Comparator<TimeSeriesRow> BY_SERIES = Comparator.comparingInt(TimeSeriesRow::appId)
+            .thenComparingInt(TimeSeriesRow::uriId)
+            .thenComparing(TimeSeriesRow::bucket);
+
+    private final HitArchiveRepository repository;
+    private final TimeSeriesRepository timeSeriesRepository;
+    private final StatsDictionary dictionary;
+    private final TransactionTemplate repeatableRead;
+    private final boolean enabled;
+    private final Path dir;
+    private final int blockSize;
+    // перевод id из файла в id справочников, файлы после записи не меняются
+    private final Map<String, IdMapping> mappings = new ConcurrentHashMap<>();
+
+    public HitArchive(HitArchiveRepository repository,
+                      TimeSeriesRepository timeSeriesRepository,
+                      StatsDictionary dictionary,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${stats.archive.enabled:false}") boolean enabled,
+                      @Value("${stats.archive.dir:stats-archive}") String dir,
+                      @Value("${stats.archive.block-size:65536}") int blockSize) {
+        this.repository = repository;
+        this.timeSeriesRepository = timeSeriesRepository;
+        this.dictionary = dictionary;
+        // строки читаются и удаляются в одном снимке: hit, записанный во время архивации, не удаляется
+        this.repeatableRead = new TransactionTemplate(transactionManager);
+        this.repeatableRead.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.blockSize = blockSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Восстанавливает оглавление архивированных суток по файлам в dir: таблица могла быть пересоздана.
+     */
+    @PostConstruct
+    public void rebuildIndex() throws IOException {
+        if (!enabled || !Files.isDirectory(dir)) {
+            return;
+        }
+        Set<LocalDate> found = new HashSet<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(file -> FILE_NAME.matcher(file.getFileName().toString()).matches())
+                    .toList()) {
+                ArchiveFileReader.ArchiveSummary summary = ArchiveFileReader.readSummary(file);
+                repository.saveDay(summary.day(), file.getFileName().toString(), summary.rows(), summary.hits());
+                found.add(summary.day());
+            }
+        }
+        for (ArchivedDay day : repository.findAllArchivedDays()) {
+            if (!found.contains(day.day())) {
+                log.warn("Нет файла архива {} за {}, сутки убраны из оглавления", day.file(), day.day());
+                repository.deleteArchivedDay(day.day());
+            }
+        }
+        log.info("Оглавление архива восстановлено по файлам: {} суток", found.size());
+    }
+
+    /**
+     * Переносит просмотры за сутки из endpoint_hits в архивный файл. Файл записывается и переименовывается
+     * до фиксации транзакции, поэтому строки удаляются только после того, как архив на диске.
+     */
+    public void archiveDay(LocalDate day) {
+        String fileName = "hits-" + FILE_DAY.format(day) + ".col";
+        Path file = dir.resolve(fileName);
+        Path tmp = dir.resolve(fileName + ".tmp");
+        long[] totals = repeatableRead.execute(status -> {
+            try {
+                Files.createDirectories(dir);
+                if (Files.exists(file)) {
+                    throw new IllegalStateException("Архив " + file + " уже существует");
+                }
+                long rows;
+                long hits;
+                try (ArchiveFileWriter writer = new ArchiveFileWriter(tmp, day, blockSize)) {
+                    repository.findDayHits(day, rs -> {
+                        try {
+                            writer.append(toMicros(rs.getTimestamp("timestamp").toLocalDateTime()),
+                                    rs.getInt("app_id"), rs.getInt("uri_id"),
+                                    IpAddresses.parse(rs.getString("ip")), rs.getInt("hit_count"));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    writer.finish(dictionary::app, dictionary::uri);
+                    rows = writer.getTotalRows();
+                    hits = writer.getTotalHits();
+                }
+                if (rows == 0) {
+                    Files.delete(tmp);
+                    return new long[]{0, 0};
+                }
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+                int deleted = repository.deleteDay(day);
+                if (deleted != rows) {
+                    throw new IllegalStateException("Удалено " + deleted + " строк вместо " + rows);
+                }
+                repository.saveDay(day, fileName, rows, hits);
+                return new long[]{rows, hits};
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (totals[0] > 0) {
+            log.info("Сутки {} перенесены в архив {}: {} строк, {} просмотров", day, file, totals[0], totals[1]);
+        }
+    }
+
+    /**
+     * Передаёт handler строки архивов за [start, end] по возрастанию суток.
+     */
+    public void scan(LocalDateTime start, LocalDateTime end, ArchivedHitHandler handler) {
+        if (!enabled) {
+            return;
+        }
+        scan(repository.findArchivedDays(start.toLocalDate(), end.toLocalDate()), toMicros(start), toMicros(end),
+                (micros, appId, uriId, ip, hitCount) -> handler.accept(fromMicros(micros), appId, uriId,
+                        toAddress(ip), hitCount));
+    }
+
+    /**
+     * Передаёт handler все строки всех архивов, например для прогрева структур в памяти.
+     */
+    public void scanAll(ArchivedHitHandler handler) {
+        if (!enabled) {
+            return;
+        }
+        scan(repository.findAllArchivedDays(), Long.MIN_VALUE, Long.MAX_VALUE,
+                (micros, appId, uriId, ip, hitCount) -> handler.accept(fromMicros(micros), appId, uriId,
+                        toAddress(ip), hitCount));
+    }
+
+    /**
+     * Считает просмотры, если интервал затрагивает архивированные сутки: архивы плюс endpoint_hits.
+     * Иначе возвращает пустой результат.
+     */
+    public Optional<List<HitCount>> getStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                                             boolean unique) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<ArchivedDay> days = repository.findArchivedDays(start.toLocalDate(), end.toLocalDate());
+        if (days.isEmpty()) {
+            return Optional.empty();
+        }
+        if (uriFilter.isEmpty()) {
+            return Optional.of(List.of());
+        }
+        IntPredicate uriMatcher = uriFilter.matcher(dictionary::uri);
+        long startMicros = toMicros(start);
+        long endMicros = toMicros(end);
+        List<HitCount> result;
+        if (unique) {
+            Map<AppUri, Set<String>> visitors = new HashMap<>();
+            scan(days, startMicros, endMicros, (micros, appId, uriId, ip, hitCount) -> {
+                if (uriMatcher.test(uriId)) {
+                    visitors.computeIfAbsent(new AppUri(appId, uriId), key -> new HashSet<>()).add(toAddress(ip));
+                }
+            });
+            repository.findLiveVisitors(start, end, uriFilter, rs -> visitors
+                    .computeIfAbsent(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new HashSet<>())
+                    .add(IpAddresses.normalize(rs.getString("ip"))));
+            result = visitors.entrySet().stream()
+                    .map(entry -> (HitCount) new HitCountRow(entry.getKey().appId(), entry.getKey().uriId(),
+                            entry.getValue().size()))
+                    .sorted(BY_HITS)
+                    .toList();
+        } else {
+            Map<AppUri, Long> counts = new HashMap<>();
+            scan(days, startMicros, endMicros, (micros, appId, uriId, ip, hitCount) -> {
+                if (uriMatcher.test(uriId)) {
+                    counts.merge(new AppUri(appId, uriId), (long) hitCount, Long::sum);
+                }
+            });
+            for (HitCount live : repository.findLiveCounts(start, end, uriFilter)) {
+                counts.merge(new AppUri(live.getAppId(), live.getUriId()), live.getHits(), Long::sum);
+            }
+            result = counts.entrySet().stream()
+                    .map(entry -> (HitCount) new HitCountRow(entry.getKey().appId(), entry.getKey().uriId(),
+                            entry.getValue()))
+                    .sorted(BY_HITS)
+                    .toList();
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * Временной ряд, если интервал затрагивает архивированные сутки: архивы плюс endpoint_hits,
+     * строки упорядочены по (app, uri, bucket). Иначе возвращает пустой результат.
+     */
+    public Optional<List<TimeSeriesRow>> getTimeSeries(LocalDateTime start, LocalDateTime end, List<Integer> uriIds,
+                                                       TimeBucket bucket, boolean unique) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<ArchivedDay> days = repository.findArchivedDays(start.toLocalDate(), end.toLocalDate());
+        if (days.isEmpty()) {
+            return Optional.empty();
+        }
+        IntPredicate uriMatcher = uriIds != null ? Set.copyOf(uriIds)::contains : uriId -> true;
+        long startMicros = toMicros(start);
+        long endMicros = toMicros(end);
+        Map<SeriesKey, Long> counts = new HashMap<>();
+        if (unique) {
+            Map<SeriesKey, Set<String>> visitors = new HashMap<>();
+            scan(days, startMicros, endMicros, (micros, appId, uriId, ip, hitCount) -> {
+                if (uriMatcher.test(uriId)) {
+                    visitors.computeIfAbsent(new SeriesKey(appId, uriId, bucketOf(micros, bucket)),
+                            key -> new HashSet<>()).add(toAddress(ip));
+                }
+            });
+            timeSeriesRepository.findVisitors(start, end, uriIds, bucket, rs -> visitors
+                    .computeIfAbsent(new SeriesKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime()), key -> new HashSet<>())
+                    .add(IpAddresses.normalize(rs.getString("ip"))));
+            visitors.forEach((key, ips) -> counts.put(key, (long) ips.size()));
+        } else {
+            scan(days, startMicros, endMicros, (micros, appId, uriId, ip, hitCount) -> {
+                if (uriMatcher.test(uriId)) {
+                    counts.merge(new SeriesKey(appId, uriId, bucketOf(micros, bucket)), (long) hitCount, Long::sum);
+                }
+            });
+            for (TimeSeriesRow live : timeSeriesRepository.getTimeSeries(start, end, uriIds, bucket, false)) {
+                counts.merge(new SeriesKey(live.appId(), live.uriId(), live.bucket()), live.hits(), Long::sum);
+            }
+        }
+        return Optional.of(counts.entrySet().stream()
+                .map(entry -> new TimeSeriesRow(entry.getKey().appId(), entry.getKey().uriId(),
+                        entry.getKey().bucket(), entry.getValue()))
+                .sorted(BY_SERIES)
+                .toList());
+    }
+
+    /**
+     * Передаёт handler строки архивов с id приложений и uri из текущих справочников.
+     */
+    private void scan(List<ArchivedDay> days, long startMicros, long endMicros, ArchiveFileReader.RowHandler handler) {
+        for (ArchivedDay day : days) {
+            Path file = dir.resolve(day.file());
+            try {
+                IdMapping mapping = mappings.get(day.file());
+                if (mapping == null) {
+                    ArchiveFileReader.ArchiveSummary summary = ArchiveFileReader.readSummary(file);
+                    mapping = new IdMapping(toCurrentIds(summary.apps(), dictionary::appId),
+                            toCurrentIds(summary.uris(), dictionary::uriId));
+                    mappings.put(day.file(), mapping);
+                }
+                Map<Integer, Integer> apps = mapping.apps();
+                Map<Integer, Integer> uris = mapping.uris();
+                ArchiveFileReader.scan(file, startMicros, endMicros, (micros, appId, uriId, ip, hitCount) ->
+                        handler.accept(micros, apps.get(appId), uris.get(uriId), ip, hitCount));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка чтения архива за " + day.day(), e);
+            }
+        }
+    }
+
+    private static Map<Integer, Integer> toCurrentIds(Map<Integer, String> names, ToIntFunction<String> ids) {
+        Map<Integer, Integer> result = new HashMap<>();
+        names.forEach((fileId, name) -> result.put(fileId, ids.applyAsInt(name)));
+        return result;
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1_000;
+    }
+
+    private static LocalDateTime bucketOf(long micros, TimeBucket bucket) {
+        return fromMicros(micros).truncatedTo(bucket.getUnit());
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static String toAddress(byte[] ip) {
+        return IpAddresses.format(ip);
+    }
+
+    @FunctionalInterface
+    public interface ArchivedHitHandler {
+        void accept(LocalDateTime timestamp, int appId, int uriId, String ip, int hitCount);
+    }
+
+    private record AppUri(int appId, int uriId) {
+    }
+
+    private record SeriesKey(int appId, int uriId, LocalDateTime bucket) {
+    }
+
+    private record IdMapping(Map<Integer, Integer> apps, Map<Integer, Integer> uris) {
+    }
+}
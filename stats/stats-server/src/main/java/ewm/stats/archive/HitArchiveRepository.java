@@ -0,0 +1,126 @@
+package ewm.stats.archive;
+
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.UriFilter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public class HitArchiveRepository {
+    private static final int FETCH_SIZE = 10_000;
+
+    private static final String ARCHIVED_DAYS = "SELECT day, file FROM hit_archive_days " +
+            "WHERE day BETWEEN :from AND :to ORDER BY day";
+
+    private static final String ALL_ARCHIVED_DAYS = "SELECT day, file FROM hit_archive_days ORDER BY day";
+
+    private static final String OLDEST_HIT = "SELECT MIN(timestamp) FROM endpoint_hits";
+
+    private static final String DAY_HITS = "SELECT app_id, uri_id, host(ip) AS ip, timestamp, hit_count " +
+            "FROM endpoint_hits WHERE timestamp >= :from AND timestamp < :to ORDER BY timestamp";
+
+    private static final String DELETE_DAY = "DELETE FROM endpoint_hits WHERE timestamp >= :from AND timestamp < :to";
+
+    private static final String SAVE_DAY = "INSERT INTO hit_archive_days (day, file, rows, hits, archived_at) " +
+            "VALUES (:day, :file, :rows, :hits, :archivedAt) " +
+            "ON CONFLICT (day) DO UPDATE SET file = EXCLUDED.file, rows = EXCLUDED.rows, hits = EXCLUDED.hits";
+
+    private static final String DELETE_ARCHIVED_DAY = "DELETE FROM hit_archive_days WHERE day = :day";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public HitArchiveRepository(DataSource dataSource) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        // курсор на стороне БД: драйвер postgres читает строки порциями только внутри транзакции
+        template.setFetchSize(FETCH_SIZE);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(template);
+    }
+
+    public List<ArchivedDay> findArchivedDays(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(ARCHIVED_DAYS, new MapSqlParameterSource()
+                        .addValue("from", Date.valueOf(from))
+                        .addValue("to", Date.valueOf(to)),
+                (rs, rowNum) -> new ArchivedDay(rs.getDate("day").toLocalDate(), rs.getString("file")));
+    }
+
+    public List<ArchivedDay> findAllArchivedDays() {
+        return jdbcTemplate.query(ALL_ARCHIVED_DAYS,
+                (rs, rowNum) -> new ArchivedDay(rs.getDate("day").toLocalDate(), rs.getString("file")));
+    }
+
+    public LocalDateTime findOldestHit() {
+        Timestamp oldest = jdbcTemplate.getJdbcTemplate().queryForObject(OLDEST_HIT, Timestamp.class);
+        return oldest != null ? oldest.toLocalDateTime() : null;
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, ip, timestamp, hit_count просмотров за сутки по возрастанию времени.
+     */
+    public void findDayHits(LocalDate day, RowCallbackHandler handler) {
+        jdbcTemplate.query(DAY_HITS, dayParams(day), handler);
+    }
+
+    public int deleteDay(LocalDate day) {
+        return jdbcTemplate.update(DELETE_DAY, dayParams(day));
+    }
+
+    public void saveDay(LocalDate day, String file, long rows, long hits) {
+        jdbcTemplate.update(SAVE_DAY, new MapSqlParameterSource()
+                .addValue("day", Date.valueOf(day))
+                .addValue("file", file)
+                .addValue("rows", rows)
+                .addValue("hits", hits)
+                .addValue("archivedAt", Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    public void deleteArchivedDay(LocalDate day) {
+        jdbcTemplate.update(DELETE_ARCHIVED_DAY, new MapSqlParameterSource("day", Date.valueOf(day)));
+    }
+
+    /**
+     * Просмотры за [start, end] в endpoint_hits, без ограничения числа строк.
+     */
+    public List<HitCount> findLiveCounts(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        String sql = "SELECT app_id, uri_id, SUM(hit_count) AS hits FROM endpoint_hits " +
+                "WHERE timestamp BETWEEN :start AND :end" + uriFilter.sql("uri_id") +
+                " GROUP BY app_id, uri_id";
+        return jdbcTemplate.query(sql, rangeParams(start, end, uriFilter),
+                (rs, rowNum) -> new HitCountRow(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, ip различных посетителей за [start, end] в endpoint_hits.
+     */
+    public void findLiveVisitors(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                                 RowCallbackHandler handler) {
+        String sql = "SELECT DISTINCT app_id, uri_id, host(ip) AS ip FROM endpoint_hits " +
+                "WHERE timestamp BETWEEN :start AND :end" + uriFilter.sql("uri_id");
+        jdbcTemplate.query(sql, rangeParams(start, end, uriFilter), handler);
+    }
+
+    private MapSqlParameterSource dayParams(LocalDate day) {
+        return new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(day.atStartOfDay()))
+                .addValue("to", Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+    }
+
+    private MapSqlParameterSource rangeParams(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        return uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end)));
+    }
+
+    public record ArchivedDay(LocalDate day, String file) {
+    }
+}
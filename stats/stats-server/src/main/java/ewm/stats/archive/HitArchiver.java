@@ -0,0 +1,51 @@
+package ewm.stats.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * По расписанию переносит в архив сутки старше after-days, начиная с самых старых.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.archive.enabled", havingValue = "true")
+public class HitArchiver {
+    private final HitArchive archive;
+    private final HitArchiveRepository repository;
+    private final int afterDays;
+
+    public HitArchiver(HitArchive archive,
+                       HitArchiveRepository repository,
+                       @Value("${stats.archive.after-days:21}") int afterDays) {
+        this.archive = archive;
+        this.repository = repository;
+        this.afterDays = afterDays;
+    }
+
+    @Scheduled(cron = "${stats.archive.cron:0 30 3 * * *}")
+    public void archiveClosedDays() {
+        LocalDate cutoff = LocalDate.now().minusDays(afterDays);
+        LocalDateTime oldest = repository.findOldestHit();
+        if (oldest == null) {
+            return;
+        }
+        for (LocalDate day = oldest.toLocalDate(); day.isBefore(cutoff); day = day.plusDays(1)) {
+            if (!repository.findArchivedDays(day, day).isEmpty()) {
+                // опоздавшие hit за уже архивированные сутки остаются в endpoint_hits
+                continue;
+            }
+            try {
+                archive.archiveDay(day);
+            } catch (RuntimeException e) {
+                log.error("Ошибка архивации просмотров за {}: {}", day, e.getMessage());
+                return;
+            }
+        }
+    }
+}
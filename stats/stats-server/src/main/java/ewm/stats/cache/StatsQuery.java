@@ -0,0 +1,47 @@
+package ewm.stats.cache;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Нормализованный запрос GET /stats: uri отсортированы и без повторов, null - все uri.
+ */
+public record StatsQuery(LocalDateTime start, LocalDateTime end, List<String> uris, String uriPrefix,
+                         boolean unique, boolean exact, Integer limit) {
+    public static StatsQuery of(LocalDateTime start, LocalDateTime end, List<String> uris, String uriPrefix,
+                                boolean unique, boolean exact, Integer limit) {
+        List<String> normalized = uris == null ? null : uris.stream()
+                .distinct()
+                .sorted()
+                .toList();
+        return new StatsQuery(start, end, normalized, uriPrefix, unique, exact, limit);
+    }
+
+    /**
+     * Тот же запрос с границами, округлёнными вниз до granularity: соседние запросы, например
+     * с end=now, получают один ключ кеша.
+     */
+    StatsQuery truncated(Duration granularity) {
+        return new StatsQuery(truncate(start, granularity), truncate(end, granularity), uris, uriPrefix,
+                unique, exact, limit);
+    }
+
+    boolean matches(String uri) {
+        return uriPrefix == null || uri.startsWith(uriPrefix);
+    }
+
+    /**
+     * Попадает ли время в интервал ключа [start, end + granularity).
+     */
+    boolean covers(LocalDateTime timestamp, Duration granularity) {
+        return !timestamp.isBefore(start) && timestamp.isBefore(end.plus(granularity));
+    }
+
+    private static LocalDateTime truncate(LocalDateTime timestamp, Duration granularity) {
+        long seconds = timestamp.toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(seconds - Math.floorMod(seconds, granularity.toSeconds()), 0,
+                ZoneOffset.UTC);
+    }
+}
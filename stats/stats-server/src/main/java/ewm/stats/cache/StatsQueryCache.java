@@ -0,0 +1,194 @@
+package ewm.stats.cache;
+
+import dto.StatsDto;
+import ewm.stats.EndpointHit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный по размеру LRU-кеш ответов GET /stats. Ключ - запрос с границами, округлёнными
+ * до granularity-seconds, поэтому ответ может не учитывать просмотры в пределах granularity
+ * от границ интервала. Запись о hit удаляет из кеша запросы, в интервал и список uri которых
+ * он попадает. Исключение - запросы, интервал которых доходит до текущего момента: в них попадает
+ * почти каждый новый hit, поэтому они не удаляются, а отдаются не дольше max-staleness-ms после подсчёта.
+ */
+@Component
+public class StatsQueryCache {
+    private final boolean enabled;
+    private final int maxSize;
+    private final Duration granularity;
+    private final long maxStalenessNanos;
+    private final Map<StatsQuery, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // запросы по конкретным uri и запросы без списка uri (все или по префиксу), для выборочной инвалидации
+    private final Map<String, Set<StatsQuery>> byUri = new HashMap<>();
+    private final Set<StatsQuery> allUris = new HashSet<>();
+    // запросы до текущего момента, устаревают по времени, а не по записи hit
+    private final Set<StatsQuery> live = new HashSet<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    public StatsQueryCache(MeterRegistry meterRegistry,
+                           @Value("${stats.cache.enabled:false}") boolean enabled,
+                           @Value("${stats.cache.max-size:1000}") int maxSize,
+                           @Value("${stats.cache.granularity-seconds:1}") long granularitySeconds,
+                           @Value("${stats.cache.max-staleness-ms:1000}") long maxStalenessMs) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.granularity = Duration.ofSeconds(granularitySeconds);
+        this.maxStalenessNanos = Duration.ofMillis(maxStalenessMs).toNanos();
+        Gauge.builder("stats.cache.size", this, StatsQueryCache::size)
+                .description("Количество запросов в кеше GET /stats")
+                .register(meterRegistry);
+        this.hits = Counter.builder("stats.cache.gets")
+                .tag("result", "hit")
+                .description("Обращения к кешу GET /stats")
+                .register(meterRegistry);
+        this.misses = Counter.builder("stats.cache.gets")
+                .tag("result", "miss")
+                .description("Обращения к кешу GET /stats")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("stats.cache.evictions")
+                .description("Запросы, вытесненные из кеша по размеру")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("stats.cache.invalidations")
+                .description("Запросы, удалённые из кеша после записи hit")
+                .register(meterRegistry);
+    }
+
+    public List<StatsDto> get(StatsQuery query, Supplier<List<StatsDto>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        StatsQuery key = query.truncated(granularity);
+        Entry pending = new Entry(System.nanoTime(), !key.end().plus(granularity).isBefore(LocalDateTime.now()));
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null && cached.value != null && !cached.isExpired(pending.loadedAt)) {
+                hits.increment();
+                return cached.value;
+            }
+            // заглушка регистрируется до подсчёта, чтобы hit, записанный во время подсчёта, её удалил
+            put(key, pending);
+        }
+        misses.increment();
+        List<StatsDto> result = List.copyOf(loader.get());
+        synchronized (this) {
+            if (entries.get(key) == pending) {
+                pending.value = result;
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(List<EndpointHit> written) {
+        if (!enabled || written.isEmpty()) {
+            return;
+        }
+        Map<String, List<LocalDateTime>> timestamps = new HashMap<>();
+        for (EndpointHit hit : written) {
+            timestamps.computeIfAbsent(hit.getUri(), key -> new ArrayList<>()).add(hit.getTimestamp());
+        }
+        synchronized (this) {
+            Set<StatsQuery> affected = new HashSet<>();
+            timestamps.forEach((uri, times) -> {
+                collectCovering(byUri.getOrDefault(uri, Set.of()), uri, times, affected);
+                collectCovering(allUris, uri, times, affected);
+            });
+            affected.forEach(this::remove);
+            invalidations.increment(affected.size());
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations.increment(entries.size());
+        entries.clear();
+        byUri.clear();
+        allUris.clear();
+        live.clear();
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private void collectCovering(Set<StatsQuery> queries, String uri, List<LocalDateTime> times,
+                                 Set<StatsQuery> affected) {
+        for (StatsQuery query : queries) {
+            if (!live.contains(query) && query.matches(uri)
+                    && times.stream().anyMatch(timestamp -> query.covers(timestamp, granularity))) {
+                affected.add(query);
+            }
+        }
+    }
+
+    private void put(StatsQuery query, Entry entry) {
+        if (entry.live) {
+            live.add(query);
+        } else {
+            live.remove(query);
+        }
+        if (entries.put(query, entry) == null) {
+            if (query.uris() == null) {
+                allUris.add(query);
+            } else {
+                query.uris().forEach(uri -> byUri.computeIfAbsent(uri, key -> new HashSet<>()).add(query));
+            }
+        }
+        if (entries.size() > maxSize) {
+            StatsQuery eldest = entries.keySet().iterator().next();
+            remove(eldest);
+            evictions.increment();
+        }
+    }
+
+    private void remove(StatsQuery query) {
+        if (entries.remove(query) == null) {
+            return;
+        }
+        live.remove(query);
+        if (query.uris() == null) {
+            allUris.remove(query);
+            return;
+        }
+        for (String uri : query.uris()) {
+            Set<StatsQuery> queries = byUri.get(uri);
+            if (queries != null) {
+                queries.remove(query);
+                if (queries.isEmpty()) {
+                    byUri.remove(uri);
+                }
+            }
+        }
+    }
+
+    private class Entry {
+        private final long loadedAt;
+        private final boolean live;
+        private List<StatsDto> value;
+
+        Entry(long loadedAt, boolean live) {
+            this.loadedAt = loadedAt;
+            this.live = live;
+        }
+
+        boolean isExpired(long now) {
+            return live && now - loadedAt > maxStalenessNanos;
+        }
+    }
+}
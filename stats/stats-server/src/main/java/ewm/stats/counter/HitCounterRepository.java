@@ -0,0 +1,34 @@
+package ewm.stats.counter;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+
+@Repository
+public class HitCounterRepository {
+    private static final int FETCH_SIZE = 10_000;
+
+    private static final String MINUTE_COUNTS = "SELECT app_id, uri_id, date_trunc('minute', timestamp) AS minute_start, " +
+            "SUM(hit_count) AS hits, MIN(timestamp) AS first_ts, MAX(timestamp) AS last_ts " +
+            "FROM endpoint_hits " +
+            "GROUP BY app_id, uri_id, date_trunc('minute', timestamp)";
+
+    private static final String DISTINCT_IPS = "SELECT DISTINCT app_id, uri_id, host(ip) AS ip FROM endpoint_hits";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public HitCounterRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    public void findMinuteCounts(RowCallbackHandler handler) {
+        jdbcTemplate.query(MINUTE_COUNTS, handler);
+    }
+
+    public void findDistinctIps(RowCallbackHandler handler) {
+        jdbcTemplate.query(DISTINCT_IPS, handler);
+    }
+}
@@ -0,0 +1,127 @@
+package ewm.stats.counter;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.UriFilter;
+import ewm.stats.archive.HitArchive;
+import ewm.stats.dictionary.IpAddresses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Счётчики просмотров в памяти сервера. Прогреваются из endpoint_hits при старте и
+ * отвечают на GET /stats по списку uri без обращения к БД, если интервал позволяет
+ * посчитать точно.
+ */
+@Slf4j
+@Component
+public class HitCounters implements SmartInitializingSingleton {
+    private final HitCounterRepository repository;
+    private final HitArchive hitArchive;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int retentionDays;
+    private final Map<Integer, Map<Integer, UriCounter>> counters = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public HitCounters(HitCounterRepository repository,
+                       HitArchive hitArchive,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${stats.counters.enabled:false}") boolean enabled,
+                       @Value("${stats.counters.retention-days:30}") int retentionDays) {
+        this.repository = repository;
+        this.hitArchive = hitArchive;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.retentionDays = retentionDays;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        log.info("Прогрев счётчиков просмотров из endpoint_hits и архивов");
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.findMinuteCounts(rs -> counterFor(rs.getInt("app_id"), rs.getInt("uri_id"))
+                    .add(rs.getTimestamp("minute_start").toLocalDateTime(), rs.getLong("hits"),
+                            UriCounter.epochNanos(rs.getTimestamp("first_ts").toLocalDateTime()),
+                            UriCounter.epochNanos(rs.getTimestamp("last_ts").toLocalDateTime())));
+            repository.findDistinctIps(rs -> counterFor(rs.getInt("app_id"), rs.getInt("uri_id"))
+                    .addIp(IpAddresses.normalize(rs.getString("ip"))));
+        });
+        // архивированных суток уже нет в endpoint_hits
+        hitArchive.scanAll((timestamp, appId, uriId, ip, hitCount) -> {
+            long nanos = UriCounter.epochNanos(timestamp);
+            UriCounter counter = counterFor(appId, uriId);
+            counter.add(timestamp, hitCount, nanos, nanos);
+            counter.addIp(IpAddresses.normalize(ip));
+        });
+        compact();
+        ready = true;
+        log.info("Счётчики просмотров прогреты, uri={}", counters.size());
+    }
+
+    public void add(List<EndpointHit> hits) {
+        if (!ready) {
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            counterFor(hit.getAppId(), hit.getUriId()).add(hit.getTimestamp(), hit.getIp());
+        }
+    }
+
+    /**
+     * Статистика по явному списку uri. Пустой результат означает, что хотя бы для одного
+     * uri ответ из памяти был бы неточным и нужно идти в БД. Запросы по префиксу идут в БД.
+     */
+    public Optional<List<HitCount>> getStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                                             boolean unique) {
+        if (!ready || uriFilter.ids() == null) {
+            return Optional.empty();
+        }
+        List<HitCount> result = new ArrayList<>();
+        for (Integer uriId : uriFilter.ids()) {
+            for (UriCounter counter : counters.getOrDefault(uriId, Map.of()).values()) {
+                OptionalLong hits = unique ? counter.countUniqueIps(start, end) : counter.countHits(start, end);
+                if (hits.isEmpty()) {
+                    return Optional.empty();
+                }
+                if (hits.getAsLong() > 0) {
+                    result.add(new HitCountRow(counter.getAppId(), counter.getUriId(), hits.getAsLong()));
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(HitCount::getHits).reversed());
+        return Optional.of(result);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.counters.compact-interval-ms:60000}")
+    public void compact() {
+        LocalDateTime horizon = LocalDateTime.now().minusDays(retentionDays);
+        counters.values().forEach(byApp -> byApp.values().forEach(counter -> counter.compact(horizon)));
+    }
+
+    private UriCounter counterFor(int appId, int uriId) {
+        return counters.computeIfAbsent(uriId, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(appId, key -> new UriCounter(appId, uriId));
+    }
+}
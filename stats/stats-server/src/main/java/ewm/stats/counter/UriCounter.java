@@ -0,0 +1,143 @@
+package ewm.stats.counter;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Счётчики просмотров одного (app, uri): поминутные LongAdder, множество ip и свёрнутый
+ * остаток для минут старше горизонта хранения.
+ */
+class UriCounter {
+    @Getter
+    private final int appId;
+    @Getter
+    private final int uriId;
+    private final ConcurrentSkipListMap<Long, LongAdder> minutes = new ConcurrentSkipListMap<>();
+    private final Set<String> ips = ConcurrentHashMap.newKeySet();
+    private final LongAccumulator first = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator last = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LongAdder compacted = new LongAdder();
+    // запись и чтение берут read lock, свёртка старых минут - write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile long compactedBefore = Long.MIN_VALUE;
+
+    UriCounter(int appId, int uriId) {
+        this.appId = appId;
+        this.uriId = uriId;
+    }
+
+    void add(LocalDateTime timestamp, long count, long firstNanos, long lastNanos) {
+        long minute = epochMinute(timestamp);
+        lock.readLock().lock();
+        try {
+            if (minute < compactedBefore) {
+                compacted.add(count);
+            } else {
+                minutes.computeIfAbsent(minute, key -> new LongAdder()).add(count);
+            }
+            first.accumulate(firstNanos);
+            last.accumulate(lastNanos);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void add(LocalDateTime timestamp, String ip) {
+        long nanos = epochNanos(timestamp);
+        add(timestamp, 1, nanos, nanos);
+        ips.add(ip);
+    }
+
+    void addIp(String ip) {
+        ips.add(ip);
+    }
+
+    /**
+     * Количество просмотров за [start, end], если его можно получить без потери точности:
+     * границы выровнены по минутам либо охватывают все просмотры этого uri.
+     */
+    OptionalLong countHits(LocalDateTime start, LocalDateTime end) {
+        lock.readLock().lock();
+        try {
+            long from;
+            boolean includeCompacted;
+            if (epochNanos(start) <= first.get()) {
+                from = Long.MIN_VALUE;
+                includeCompacted = true;
+            } else if (isMinuteStart(start) && epochMinute(start) >= compactedBefore) {
+                from = epochMinute(start);
+                includeCompacted = false;
+            } else {
+                return OptionalLong.empty();
+            }
+            long to;
+            if (epochNanos(end) >= last.get()) {
+                to = Long.MAX_VALUE;
+            } else if (isMinuteStart(end.plusNanos(1))) {
+                to = epochMinute(end);
+            } else {
+                return OptionalLong.empty();
+            }
+            if (from > to) {
+                return OptionalLong.of(0);
+            }
+            ConcurrentNavigableMap<Long, LongAdder> range = minutes.subMap(from, true, to, true);
+            long hits = includeCompacted ? compacted.sum() : 0;
+            for (LongAdder adder : range.values()) {
+                hits += adder.sum();
+            }
+            return OptionalLong.of(hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Количество уникальных ip, если интервал охватывает все просмотры этого uri.
+     */
+    OptionalLong countUniqueIps(LocalDateTime start, LocalDateTime end) {
+        if (epochNanos(start) <= first.get() && epochNanos(end) >= last.get()) {
+            return OptionalLong.of(ips.size());
+        }
+        return OptionalLong.empty();
+    }
+
+    void compact(LocalDateTime horizon) {
+        long horizonMinute = epochMinute(horizon);
+        lock.writeLock().lock();
+        try {
+            Map<Long, LongAdder> expired = minutes.headMap(horizonMinute);
+            for (LongAdder adder : expired.values()) {
+                compacted.add(adder.sum());
+            }
+            expired.clear();
+            compactedBefore = Math.max(compactedBefore, horizonMinute);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static long epochNanos(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano();
+    }
+
+    private static long epochMinute(LocalDateTime timestamp) {
+        return Math.floorDiv(timestamp.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static boolean isMinuteStart(LocalDateTime timestamp) {
+        return timestamp.getSecond() == 0 && timestamp.getNano() == 0;
+    }
+}
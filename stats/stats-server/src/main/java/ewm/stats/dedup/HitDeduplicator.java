@@ -0,0 +1,121 @@
+package ewm.stats.dedup;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.EndpointHitBatchRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сворачивание повторных hit: hit того же (app, uri, ip) в пределах окна от первого
+ * не вставляется отдельной строкой, а увеличивает hit_count строки первого.
+ * Фильтр Блума отсекает hit, которых за последнее время точно не было, и для них
+ * обращения к endpoint_hits не нужно. Вызывается внутри транзакции записи.
+ */
+@Slf4j
+@Component
+public class HitDeduplicator {
+    private final EndpointHitBatchRepository batchRepository;
+    private final boolean enabled;
+    private final Duration window;
+    private final RotatingBloomFilter filter;
+    private final Counter merged;
+    private final Counter misses;
+
+    public HitDeduplicator(EndpointHitBatchRepository batchRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.dedup.enabled:false}") boolean enabled,
+                           @Value("${stats.dedup.window-ms:1000}") long windowMs,
+                           @Value("${stats.dedup.expected-keys:100000}") int expectedKeys,
+                           @Value("${stats.dedup.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.batchRepository = batchRepository;
+        this.enabled = enabled;
+        this.window = Duration.ofMillis(windowMs);
+        this.filter = enabled ? new RotatingBloomFilter(expectedKeys, falsePositiveRate, windowMs) : null;
+        this.merged = Counter.builder("stats.dedup.merged")
+                .description("Hit, прибавленные к уже записанной строке вместо вставки новой")
+                .register(meterRegistry);
+        this.misses = Counter.builder("stats.dedup.misses")
+                .description("Hit, отмеченные фильтром как повторные, для которых строка в окне не нашлась")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Включено сворачивание повторных hit, окно {} мс", windowMs);
+        }
+    }
+
+    /**
+     * Пытается прибавить hit к строке, записанной в пределах окна. Если удалось, заполняет id hit
+     * и возвращает true; иначе hit нужно вставить.
+     */
+    public boolean merge(EndpointHit hit) {
+        if (!enabled || !filter.mightContainAndAdd(key(hit), System.currentTimeMillis())) {
+            return false;
+        }
+        Long id = batchRepository.incrementRecent(hit, window);
+        if (id == null) {
+            misses.increment();
+            return false;
+        }
+        hit.setId(id);
+        merged.increment();
+        return true;
+    }
+
+    /**
+     * Сворачивает повторы внутри пачки и прибавляет к уже записанным строкам те, что повторяют их.
+     * Возвращает строки, которые нужно вставить; исходные hit не меняются.
+     */
+    public List<EndpointHit> collapse(List<EndpointHit> hits) {
+        if (!enabled) {
+            return hits;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, EndpointHit> open = new HashMap<>();
+        List<EndpointHit> rows = new ArrayList<>();
+        List<EndpointHit> candidates = new ArrayList<>();
+        for (EndpointHit hit : hits) {
+            String key = key(hit);
+            EndpointHit row = open.get(key);
+            if (row != null && !hit.getTimestamp().isBefore(row.getTimestamp())
+                    && !hit.getTimestamp().isAfter(row.getTimestamp().plus(window))) {
+                row.setHitCount(row.getHitCount() + 1);
+                continue;
+            }
+            row = EndpointHit.builder()
+                    .appId(hit.getAppId())
+                    .uriId(hit.getUriId())
+                    .app(hit.getApp())
+                    .uri(hit.getUri())
+                    .ip(hit.getIp())
+                    .timestamp(hit.getTimestamp())
+                    .build();
+            open.put(key, row);
+            if (filter.mightContainAndAdd(key, now)) {
+                candidates.add(row);
+            } else {
+                rows.add(row);
+            }
+        }
+        boolean[] found = batchRepository.incrementRecent(candidates, window);
+        for (int i = 0; i < found.length; i++) {
+            if (!found[i]) {
+                misses.increment();
+                rows.add(candidates.get(i));
+            }
+        }
+        merged.increment(hits.size() - rows.size());
+        return rows;
+    }
+
+    private static String key(EndpointHit hit) {
+        return hit.getAppId() + "|" + hit.getUriId() + "|" + hit.getIp();
+    }
+}
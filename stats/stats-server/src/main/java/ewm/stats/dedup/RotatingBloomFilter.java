@@ -0,0 +1,92 @@
+package ewm.stats.dedup;
+
+import ewm.stats.sketch.Hashing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Фильтр Блума из двух поколений: ключи добавляются в текущее, проверяются по обоим.
+ * Раз в rotationMillis предыдущее поколение отбрасывается, поэтому ключ помнится
+ * не меньше одного и не больше двух периодов. Ложноотрицательных ответов внутри периода нет,
+ * ложноположительные возможны с заданной вероятностью.
+ */
+class RotatingBloomFilter {
+    private final int bits;
+    private final int hashes;
+    private final long rotationMillis;
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+    private volatile long rotatedAt;
+
+    RotatingBloomFilter(int expectedKeys, double falsePositiveRate, long rotationMillis) {
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 63, optimalBits));
+        this.hashes = (int) Math.max(1, Math.round((double) bits / expectedKeys * ln2));
+        this.rotationMillis = rotationMillis;
+        this.current = new AtomicLongArray(words(bits));
+        this.previous = new AtomicLongArray(words(bits));
+        this.rotatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Добавляет ключ и возвращает true, если он, вероятно, уже встречался за последний период.
+     */
+    boolean mightContainAndAdd(String key, long nowMillis) {
+        rotateIfDue(nowMillis);
+        long hash = Hashing.hash64(key);
+        // двойное хеширование: i-я позиция = h1 + i * h2
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        boolean inCurrent = true;
+        boolean inPrevious = true;
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            if (!setBit(cur, word, mask)) {
+                inCurrent = false;
+            }
+            if (inPrevious && (prev.get(word) & mask) == 0) {
+                inPrevious = false;
+            }
+        }
+        return inCurrent || inPrevious;
+    }
+
+    private void rotateIfDue(long nowMillis) {
+        if (nowMillis - rotatedAt < rotationMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (nowMillis - rotatedAt < rotationMillis) {
+                return;
+            }
+            // после простоя дольше двух периодов оба поколения устарели
+            previous = nowMillis - rotatedAt < 2 * rotationMillis ? current : new AtomicLongArray(words(bits));
+            current = new AtomicLongArray(words(bits));
+            rotatedAt = nowMillis;
+        }
+    }
+
+    /**
+     * Устанавливает бит и возвращает true, если он уже был установлен.
+     */
+    private static boolean setBit(AtomicLongArray array, int word, long mask) {
+        long value = array.get(word);
+        while ((value & mask) == 0) {
+            long witness = array.compareAndExchange(word, value, value | mask);
+            if (witness == value) {
+                return false;
+            }
+            value = witness;
+        }
+        return true;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
@@ -0,0 +1,106 @@
+package ewm.stats.delta;
+
+import ewm.exception.BadRequestException;
+import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Журнал последних записанных hit в памяти для GET /stats/delta. Каждому hit после фиксации транзакции
+ * присваивается порядковый номер; watermark - номер следующего hit вместе с меткой запуска сервера.
+ * Хранятся последние capacity hit: если watermark старше журнала или выдан до перезапуска,
+ * клиент получает reset и должен заново запросить итоги через GET /stats.
+ */
+@Component
+public class HitDeltaLog {
+    private static final Comparator<HitCount> BY_HITS = Comparator.comparingLong(HitCount::getHits).reversed()
+            .thenComparingInt(HitCount::getUriId)
+            .thenComparingInt(HitCount::getAppId);
+
+    private final boolean enabled;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final int[] appIds;
+    private final int[] uriIds;
+    private long next;
+    private int size;
+
+    public HitDeltaLog(@Value("${stats.delta.enabled:false}") boolean enabled,
+                       @Value("${stats.delta.capacity:100000}") int capacity) {
+        this.enabled = enabled;
+        this.appIds = new int[enabled ? capacity : 0];
+        this.uriIds = new int[enabled ? capacity : 0];
+    }
+
+    public synchronized void add(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            int index = (int) (next % appIds.length);
+            appIds[index] = hit.getAppId();
+            uriIds[index] = hit.getUriId();
+            next++;
+            size = Math.min(size + 1, appIds.length);
+        }
+    }
+
+    /**
+     * Просмотры по (app, uri), записанные после since. Без since или с устаревшим since - reset.
+     */
+    public Delta getDelta(String since) {
+        if (!enabled) {
+            throw new BadRequestException("Инкрементальная статистика отключена");
+        }
+        Long from = since != null ? parse(since) : null;
+        Map<Long, Long> counts = new HashMap<>();
+        long to;
+        synchronized (this) {
+            to = next;
+            if (from != null && from > to) {
+                throw new BadRequestException("Некорректный watermark");
+            }
+            if (from == null || from < to - size) {
+                return new Delta(List.of(), watermark(to), true);
+            }
+            for (long seq = from; seq < to; seq++) {
+                int index = (int) (seq % appIds.length);
+                counts.merge((long) appIds[index] << 32 | uriIds[index] & 0xffffffffL, 1L, Long::sum);
+            }
+        }
+        List<HitCount> result = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> result.add(new HitCountRow((int) (key >>> 32), (int) (long) key, hits)));
+        result.sort(BY_HITS);
+        return new Delta(result, watermark(to), false);
+    }
+
+    private Long parse(String watermark) {
+        int separator = watermark.indexOf('-');
+        if (separator < 0) {
+            throw new BadRequestException("Некорректный watermark");
+        }
+        if (!watermark.substring(0, separator).equals(epoch)) {
+            // watermark выдан до перезапуска сервера
+            return null;
+        }
+        try {
+            return Long.parseLong(watermark.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Некорректный watermark");
+        }
+    }
+
+    private String watermark(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    public record Delta(List<HitCount> counts, String watermark, boolean reset) {
+    }
+}
@@ -0,0 +1,15 @@
+package ewm.stats.dictionary;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum DictionaryTable {
+    APPS("stats_apps", "name"),
+    URIS("stats_uris", "uri"),
+    IPS("stats_ips", "ip");
+
+    private final String table;
+    private final String column;
+}
@@ -0,0 +1,174 @@
+package ewm.stats.dictionary;
+
+import ewm.exception.BadRequestException;
+
+import java.util.Arrays;
+
+public final class IpAddresses {
+    private IpAddresses() {
+    }
+
+    /**
+     * Приводит ip к единому текстовому виду, чтобы один адрес, записанный по-разному
+     * (например, IPv6 в полной и сокращённой форме), считался одним посетителем.
+     * Вид совпадает с host(ip) в postgres, см. {@link #format}.
+     */
+    public static String normalize(String ip) {
+        return format(parse(ip));
+    }
+
+    /**
+     * Разбирает литерал IPv4 или IPv6 в 4 или 16 байт, не обращаясь к DNS.
+     * Адреса вида ::ffff:a.b.c.d возвращаются как IPv4, как это делает InetAddress.
+     */
+    public static byte[] parse(String ip) {
+        byte[] address = ip == null ? null : ip.indexOf(':') < 0 ? parseIpv4(ip) : parseIpv6(ip);
+        if (address == null) {
+            throw new BadRequestException("Некорректный ip: " + ip);
+        }
+        return address;
+    }
+
+    /**
+     * Текстовый вид адреса из 4 или 16 байт. IPv6 записывается по RFC 5952, как в postgres:
+     * без ведущих нулей, самая длинная серия нулевых групп заменяется на "::".
+     */
+    public static String format(byte[] address) {
+        if (address.length == 4) {
+            return (address[0] & 0xff) + "." + (address[1] & 0xff) + "." + (address[2] & 0xff) + "."
+                    + (address[3] & 0xff);
+        }
+        int[] groups = new int[8];
+        for (int i = 0; i < 8; i++) {
+            groups[i] = (address[2 * i] & 0xff) << 8 | address[2 * i + 1] & 0xff;
+        }
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            int length = 0;
+            while (i + length < 8 && groups[i + length] == 0) {
+                length++;
+            }
+            if (length > bestLength) {
+                bestStart = i;
+                bestLength = length;
+            }
+            i += Math.max(length, 1);
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                result.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (!result.isEmpty() && result.charAt(result.length() - 1) != ':') {
+                result.append(':');
+            }
+            result.append(Integer.toHexString(groups[i]));
+        }
+        return result.toString();
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            int value = parseNumber(parts[i], 10, 3);
+            if (value < 0 || value > 255) {
+                return null;
+            }
+            address[i] = (byte) value;
+        }
+        return address;
+    }
+
+    private static byte[] parseIpv6(String ip) {
+        int gap = ip.indexOf("::");
+        if (gap >= 0 && ip.indexOf("::", gap + 1) >= 0) {
+            return null;
+        }
+        int[] head = gap < 0 ? parseGroups(ip) : parseGroups(ip.substring(0, gap));
+        int[] tail = gap < 0 ? new int[0] : parseGroups(ip.substring(gap + 2));
+        if (head == null || tail == null) {
+            return null;
+        }
+        int count = head.length + tail.length;
+        if (gap < 0 ? count != 8 : count > 7) {
+            return null;
+        }
+        // IPv4 допускается только в конце адреса
+        if (gap >= 0 && ip.substring(0, gap).indexOf('.') >= 0) {
+            return null;
+        }
+        int[] groups = new int[8];
+        System.arraycopy(head, 0, groups, 0, head.length);
+        System.arraycopy(tail, 0, groups, 8 - tail.length, tail.length);
+        byte[] address = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            address[2 * i] = (byte) (groups[i] >>> 8);
+            address[2 * i + 1] = (byte) groups[i];
+        }
+        return isIpv4Mapped(groups) ? Arrays.copyOfRange(address, 12, 16) : address;
+    }
+
+    /**
+     * Группы по 16 бит из части адреса между "::"; последняя может быть записана как IPv4.
+     */
+    private static int[] parseGroups(String part) {
+        if (part.isEmpty()) {
+            return new int[0];
+        }
+        String[] items = part.split(":", -1);
+        int[] groups = new int[items.length + 1];
+        int count = 0;
+        for (int i = 0; i < items.length; i++) {
+            if (i == items.length - 1 && items[i].indexOf('.') >= 0) {
+                byte[] ipv4 = parseIpv4(items[i]);
+                if (ipv4 == null) {
+                    return null;
+                }
+                groups[count++] = (ipv4[0] & 0xff) << 8 | ipv4[1] & 0xff;
+                groups[count++] = (ipv4[2] & 0xff) << 8 | ipv4[3] & 0xff;
+                continue;
+            }
+            int value = parseNumber(items[i], 16, 4);
+            if (value < 0) {
+                return null;
+            }
+            groups[count++] = value;
+        }
+        return Arrays.copyOf(groups, count);
+    }
+
+    private static boolean isIpv4Mapped(int[] groups) {
+        for (int i = 0; i < 5; i++) {
+            if (groups[i] != 0) {
+                return false;
+            }
+        }
+        return groups[5] == 0xffff;
+    }
+
+    /**
+     * Число из 1..maxDigits цифр ASCII в заданной системе счисления или -1.
+     */
+    private static int parseNumber(String digits, int radix, int maxDigits) {
+        if (digits.isEmpty() || digits.length() > maxDigits) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            int digit = c < 128 ? Character.digit(c, radix) : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * radix + digit;
+        }
+        return value;
+    }
+}
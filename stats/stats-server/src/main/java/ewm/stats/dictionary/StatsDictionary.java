@@ -0,0 +1,171 @@
+package ewm.stats.dictionary;
+
+import dto.StatsDto;
+import ewm.stats.HitCount;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Справочники приложений и uri. В endpoint_hits и агрегатах хранятся только их целочисленные id,
+ * соответствие id и строк кешируется в памяти. Справочник ip нужен только битовым картам посетителей.
+ */
+@Component
+public class StatsDictionary {
+    // ограничение числа параметров IN в одном запросе
+    private static final int BATCH_SIZE = 10_000;
+
+    private final StatsDictionaryRepository repository;
+    private final TransactionTemplate newTransaction;
+    private final Entries apps = new Entries(DictionaryTable.APPS);
+    private final Entries uris = new Entries(DictionaryTable.URIS);
+    private final Entries ips = new Entries(DictionaryTable.IPS);
+
+    public StatsDictionary(StatsDictionaryRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        // новые значения фиксируются сразу, чтобы откат записи hit не оставил в кеше несуществующий id
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public int appId(String app) {
+        return apps.getOrCreate(app);
+    }
+
+    public int uriId(String uri) {
+        return uris.getOrCreate(uri);
+    }
+
+    /**
+     * Id ip из списка, новые ip добавляются в справочник.
+     */
+    public Map<String, Integer> ipIds(Collection<String> values) {
+        return ips.getOrCreateAll(values);
+    }
+
+    /**
+     * Id известных uri из списка. Неизвестные uri пропускаются: просмотров по ним ещё не было.
+     */
+    public List<Integer> findUriIds(Collection<String> values) {
+        return new ArrayList<>(uris.findIds(values).values());
+    }
+
+    public String app(int id) {
+        return apps.getValues(Set.of(id)).get(id);
+    }
+
+    public String uri(int id) {
+        return uris.getValues(Set.of(id)).get(id);
+    }
+
+    public List<StatsDto> toStats(List<? extends HitCount> counts) {
+        Set<Integer> appIds = new HashSet<>();
+        Set<Integer> uriIds = new HashSet<>();
+        for (HitCount count : counts) {
+            appIds.add(count.getAppId());
+            uriIds.add(count.getUriId());
+        }
+        Map<Integer, String> appNames = apps.getValues(appIds);
+        Map<Integer, String> uriNames = uris.getValues(uriIds);
+        return counts.stream()
+                .map(count -> new StatsDto(appNames.get(count.getAppId()), uriNames.get(count.getUriId()),
+                        count.getHits()))
+                .toList();
+    }
+
+    private class Entries {
+        private final DictionaryTable table;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Map<Integer, String> values = new ConcurrentHashMap<>();
+
+        Entries(DictionaryTable table) {
+            this.table = table;
+        }
+
+        int getOrCreate(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = newTransaction.execute(status -> repository.getOrCreate(table, value));
+                put(id, value);
+            }
+            return id;
+        }
+
+        Map<String, Integer> getOrCreateAll(Collection<String> requested) {
+            Map<String, Integer> result = new HashMap<>();
+            Set<String> missing = new HashSet<>();
+            for (String value : requested) {
+                Integer id = ids.get(value);
+                if (id != null) {
+                    result.put(value, id);
+                } else {
+                    missing.add(value);
+                }
+            }
+            List<String> pending = new ArrayList<>(missing);
+            for (int from = 0; from < pending.size(); from += BATCH_SIZE) {
+                List<String> batch = pending.subList(from, Math.min(from + BATCH_SIZE, pending.size()));
+                newTransaction.execute(status -> repository.getOrCreateAll(table, batch)).forEach((value, id) -> {
+                    put(id, value);
+                    result.put(value, id);
+                });
+            }
+            return result;
+        }
+
+        Map<String, Integer> findIds(Collection<String> requested) {
+            Map<String, Integer> result = new HashMap<>();
+            Set<String> missing = new HashSet<>();
+            for (String value : requested) {
+                Integer id = ids.get(value);
+                if (id != null) {
+                    result.put(value, id);
+                } else {
+                    missing.add(value);
+                }
+            }
+            if (!missing.isEmpty()) {
+                repository.findIds(table, missing).forEach((value, id) -> {
+                    put(id, value);
+                    result.put(value, id);
+                });
+            }
+            return result;
+        }
+
+        Map<Integer, String> getValues(Set<Integer> requested) {
+            Map<Integer, String> result = new HashMap<>();
+            Set<Integer> missing = new HashSet<>();
+            for (Integer id : requested) {
+                String value = values.get(id);
+                if (value != null) {
+                    result.put(id, value);
+                } else {
+                    missing.add(id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                repository.findValues(table, missing).forEach((id, value) -> {
+                    put(id, value);
+                    result.put(id, value);
+                });
+            }
+            return result;
+        }
+
+        private void put(int id, String value) {
+            ids.put(value, id);
+            values.put(id, value);
+        }
+    }
+}
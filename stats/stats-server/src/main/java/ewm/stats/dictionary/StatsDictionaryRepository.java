@@ -0,0 +1,55 @@
+package ewm.stats.dictionary;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class StatsDictionaryRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public int getOrCreate(DictionaryTable table, String value) {
+        MapSqlParameterSource params = new MapSqlParameterSource("value", value);
+        jdbcTemplate.update("INSERT INTO " + table.getTable() + " (" + table.getColumn() + ") VALUES (:value) " +
+                "ON CONFLICT (" + table.getColumn() + ") DO NOTHING", params);
+        return jdbcTemplate.queryForObject("SELECT id FROM " + table.getTable() +
+                " WHERE " + table.getColumn() + " = :value", params, Integer.class);
+    }
+
+    /**
+     * Id значений, недостающие значения добавляются одним запросом.
+     */
+    public Map<String, Integer> getOrCreateAll(DictionaryTable table, Collection<String> values) {
+        MapSqlParameterSource params = new MapSqlParameterSource("values", values.toArray(String[]::new));
+        jdbcTemplate.update("INSERT INTO " + table.getTable() + " (" + table.getColumn() + ") " +
+                "SELECT DISTINCT unnest(CAST(:values AS VARCHAR[])) ON CONFLICT (" + table.getColumn() + ") DO NOTHING",
+                params);
+        return findIds(table, values);
+    }
+
+    public Map<String, Integer> findIds(DictionaryTable table, Collection<String> values) {
+        Map<String, Integer> result = new HashMap<>();
+        jdbcTemplate.query("SELECT id, " + table.getColumn() + " AS value FROM " + table.getTable() +
+                        " WHERE " + table.getColumn() + " IN (:values)", new MapSqlParameterSource("values", values),
+                rs -> {
+                    result.put(rs.getString("value"), rs.getInt("id"));
+                });
+        return result;
+    }
+
+    public Map<Integer, String> findValues(DictionaryTable table, Collection<Integer> ids) {
+        Map<Integer, String> result = new HashMap<>();
+        jdbcTemplate.query("SELECT id, " + table.getColumn() + " AS value FROM " + table.getTable() +
+                        " WHERE id IN (:ids)", new MapSqlParameterSource("ids", ids),
+                rs -> {
+                    result.put(rs.getInt("id"), rs.getString("value"));
+                });
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+package ewm.stats.export;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+@Repository
+public class HitExportRepository {
+    private static final int FETCH_SIZE = 10_000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public HitExportRepository(DataSource dataSource) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        // курсор на стороне БД: драйвер postgres читает строки порциями только внутри транзакции
+        template.setFetchSize(FETCH_SIZE);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(template);
+    }
+
+    /**
+     * Построчно отдаёт id, app, uri, ip, timestamp и hit_count просмотров за [start, end].
+     */
+    public void findHits(LocalDateTime start, LocalDateTime end, String app, RowCallbackHandler handler) {
+        String sql = "SELECT h.id, a.name AS app, u.uri, host(h.ip) AS ip, h.timestamp, h.hit_count " +
+                "FROM endpoint_hits AS h " +
+                "JOIN stats_apps AS a ON a.id = h.app_id " +
+                "JOIN stats_uris AS u ON u.id = h.uri_id " +
+                "WHERE h.timestamp BETWEEN :start AND :end" +
+                (app != null ? " AND a.name = :app" : "");
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("app", app);
+        jdbcTemplate.query(sql, params, handler);
+    }
+}
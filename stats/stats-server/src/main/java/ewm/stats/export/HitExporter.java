@@ -0,0 +1,191 @@
+package ewm.stats.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ewm.exception.BadRequestException;
+import ewm.stats.archive.HitArchive;
+import ewm.stats.dictionary.StatsDictionary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка сырых просмотров в NDJSON или CSV. Строки читаются курсором и сразу пишутся
+ * в поток ответа, поэтому расход памяти не зависит от размера интервала. Сначала выгружаются
+ * архивированные сутки (у их строк нет id), затем endpoint_hits.
+ */
+@Slf4j
+@Component
+public class HitExporter {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final HitExportRepository repository;
+    private final HitArchive hitArchive;
+    private final StatsDictionary dictionary;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public HitExporter(HitExportRepository repository, HitArchive hitArchive, StatsDictionary dictionary,
+                       ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.hitArchive = hitArchive;
+        this.dictionary = dictionary;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public void validate(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end)) {
+            throw new BadRequestException("Некорректное время");
+        }
+    }
+
+    public void export(LocalDateTime start, LocalDateTime end, String app, ExportFormat format, boolean gzip,
+                       OutputStream out) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+        RowWriter rowWriter = format == ExportFormat.CSV ? new CsvRowWriter(writer) : new JsonRowWriter(writer);
+        long[] rows = new long[1];
+        try {
+            rowWriter.start();
+            hitArchive.scan(start, end, (timestamp, appId, uriId, ip, hitCount) -> {
+                String appName = dictionary.app(appId);
+                if (app == null || app.equals(appName)) {
+                    write(rowWriter, new ExportRow(null, appName, dictionary.uri(uriId), ip, timestamp, hitCount));
+                    rows[0]++;
+                }
+            });
+            readOnlyTransaction.executeWithoutResult(status -> repository.findHits(start, end, app, rs -> {
+                write(rowWriter, new ExportRow(rs.getLong("id"), rs.getString("app"), rs.getString("uri"),
+                        rs.getString("ip"), rs.getTimestamp("timestamp").toLocalDateTime(), rs.getInt("hit_count")));
+                rows[0]++;
+            }));
+            rowWriter.finish();
+        } catch (UncheckedIOException e) {
+            log.warn("Выгрузка просмотров прервана после {} строк: {}", rows[0], e.getMessage());
+            throw e.getCause();
+        }
+        writer.flush();
+        if (gzip) {
+            ((GZIPOutputStream) target).finish();
+        }
+        log.info("Выгружено {} просмотров start={}, end={}, app={}, format={}", rows[0], start, end, app, format);
+    }
+
+    private static void write(RowWriter rowWriter, ExportRow row) {
+        try {
+            rowWriter.write(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Строка выгрузки, id - null для строк из архива.
+     */
+    private record ExportRow(Long id, String app, String uri, String ip, LocalDateTime timestamp, int hitCount) {
+    }
+
+    private interface RowWriter {
+        void start() throws IOException;
+
+        void write(ExportRow row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private class JsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private JsonGenerator generator;
+
+        JsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void start() throws IOException {
+            generator = objectMapper.getFactory().createGenerator(writer);
+            // каждая строка выгрузки - отдельный JSON-объект
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            generator.writeStartObject();
+            if (row.id() != null) {
+                generator.writeNumberField("id", row.id());
+            } else {
+                generator.writeNullField("id");
+            }
+            generator.writeStringField("app", row.app());
+            generator.writeStringField("uri", row.uri());
+            generator.writeStringField("ip", row.ip());
+            generator.writeStringField("timestamp", row.timestamp().format(TIMESTAMP_FORMAT));
+            generator.writeNumberField("count", row.hitCount());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void start() throws IOException {
+            writer.write("id,app,uri,ip,timestamp,count\n");
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            if (row.id() != null) {
+                writer.write(Long.toString(row.id()));
+            }
+            writer.write(',');
+            writer.write(escape(row.app()));
+            writer.write(',');
+            writer.write(escape(row.uri()));
+            writer.write(',');
+            writer.write(row.ip());
+            writer.write(',');
+            writer.write(row.timestamp().format(TIMESTAMP_FORMAT));
+            writer.write(',');
+            writer.write(Integer.toString(row.hitCount()));
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        private static String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                    && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ewm.stats.ingest;
+
+import ewm.exception.TooManyRequestsException;
+import ewm.stats.EndpointHit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронная запись просмотров: hit кладётся в ограниченный буфер, а фоновый поток
+ * сбрасывает накопленное в endpoint_hits одной транзакцией раз в flush-interval-ms
+ * или при наборе batch-size записей. Место в буфере (capacity) освобождается только после записи пакета:
+ * пакет, который не удалось записать, повторяется с паузой от flush-interval-ms до retry-max-ms,
+ * а новые hit при заполненном буфере отклоняются с 429. При остановке незаписанный пакет теряется.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "buffered")
+public class BufferedHitWriter implements HitWriter {
+    private final HitStore hitStore;
+    private final BlockingQueue<EndpointHit> queue = new LinkedBlockingQueue<>();
+    private final int bufferCapacity;
+    private final Semaphore capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long retryMaxNanos;
+    private final OverflowPolicy overflow;
+    private final long blockTimeoutMs;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+    private final Counter dropped;
+    private final Counter failed;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public BufferedHitWriter(HitStore hitStore,
+                             MeterRegistry meterRegistry,
+                             @Value("${stats.ingest.buffer.capacity:10000}") int capacity,
+                             @Value("${stats.ingest.buffer.batch-size:500}") int batchSize,
+                             @Value("${stats.ingest.buffer.flush-interval-ms:200}") long flushIntervalMs,
+                             @Value("${stats.ingest.buffer.overflow:BLOCK}") OverflowPolicy overflow,
+                             @Value("${stats.ingest.buffer.block-timeout-ms:1000}") long blockTimeoutMs,
+                             @Value("${stats.ingest.buffer.retry-max-ms:10000}") long retryMaxMs) {
+        this.hitStore = hitStore;
+        this.bufferCapacity = capacity;
+        this.capacity = new Semaphore(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.retryMaxNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(retryMaxMs), flushIntervalNanos);
+        this.overflow = overflow;
+        this.blockTimeoutMs = blockTimeoutMs;
+        Gauge.builder("stats.ingest.buffer.depth", this, writer -> writer.bufferCapacity
+                        - writer.capacity.availablePermits())
+                .description("Количество hit, ожидающих записи в БД")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.ingest.flush")
+                .description("Время группового сброса буфера в БД")
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("stats.ingest.flush.size")
+                .description("Количество hit в одном сбросе")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("stats.ingest.dropped")
+                .description("Hit, отклонённые из-за переполнения буфера")
+                .register(meterRegistry);
+        this.failed = Counter.builder("stats.ingest.failed")
+                .description("Hit, не записанные в БД к остановке сервиса")
+                .register(meterRegistry);
+        this.writerThread = new Thread(this::run, "stats-hit-writer");
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + blockTimeoutMs);
+    }
+
+    @Override
+    public EndpointHit write(EndpointHit hit) {
+        enqueue(List.of(hit));
+        return hit;
+    }
+
+    /**
+     * Пакет принимается целиком или отклоняется целиком, чтобы повтор клиента не записал его часть дважды.
+     */
+    @Override
+    public void writeAll(List<EndpointHit> hits) {
+        enqueue(hits);
+    }
+
+    private void enqueue(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        boolean accepted;
+        if (overflow == OverflowPolicy.DROP) {
+            accepted = capacity.tryAcquire(hits.size());
+        } else {
+            try {
+                accepted = capacity.tryAcquire(hits.size(), blockTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+        }
+        if (!accepted) {
+            dropped.increment(hits.size());
+            throw new TooManyRequestsException("Буфер записи hit заполнен");
+        }
+        queue.addAll(hits);
+    }
+
+    private void run() {
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        long retryDelay = 0;
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            // ждём не дольше flush-interval-ms за раз, чтобы остановка не ждала паузу перед повтором
+            long wait = Math.min(deadline - System.nanoTime(), flushIntervalNanos);
+            try {
+                if (batch.size() < batchSize) {
+                    EndpointHit hit = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (hit != null) {
+                        batch.add(hit);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                } else if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            // во время паузы перед повтором полный пакет не сбрасывается досрочно
+            boolean full = batch.size() >= batchSize && retryDelay == 0;
+            if (running && !full && System.nanoTime() - deadline < 0) {
+                continue;
+            }
+            if (flush(batch)) {
+                retryDelay = 0;
+            } else if (running) {
+                retryDelay = Math.min(Math.max(retryDelay * 2, flushIntervalNanos), retryMaxNanos);
+                log.warn("Повтор записи пакета из {} hit через {} мс", batch.size(),
+                        TimeUnit.NANOSECONDS.toMillis(retryDelay));
+            } else {
+                int lost = batch.size() + queue.size();
+                log.error("При остановке не записано в БД {} hit", lost);
+                failed.increment(lost);
+                return;
+            }
+            deadline = System.nanoTime() + (retryDelay == 0 ? flushIntervalNanos : retryDelay);
+        }
+    }
+
+    /**
+     * Записывает пакет; при успехе очищает его и освобождает место в буфере.
+     */
+    private boolean flush(List<EndpointHit> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            flushTimer.record(() -> hitStore.saveAll(batch));
+            flushSize.record(batch.size());
+        } catch (RuntimeException e) {
+            log.error("Ошибка записи пакета hit в БД: {}", e.getMessage());
+            return false;
+        }
+        capacity.release(batch.size());
+        batch.clear();
+        return true;
+    }
+}
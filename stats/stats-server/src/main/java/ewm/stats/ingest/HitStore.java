@@ -0,0 +1,88 @@
+package ewm.stats.ingest;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.EndpointHitBatchRepository;
+import ewm.stats.EndpointHitRepository;
+import ewm.stats.cache.StatsQueryCache;
+import ewm.stats.counter.HitCounters;
+import ewm.stats.dedup.HitDeduplicator;
+import ewm.stats.delta.HitDeltaLog;
+import ewm.stats.dictionary.StatsDictionary;
+import ewm.stats.rollup.HourlyRollup;
+import ewm.stats.sketch.UniqueVisitorSketches;
+import ewm.stats.trending.TrendingUris;
+import ewm.stats.visitor.VisitorBitmaps;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Запись hit в БД вместе с агрегатами. Id справочников получаются до начала транзакции,
+ * структуры в памяти обновляются только после её фиксации. Повторные hit могут быть свёрнуты
+ * в hit_count уже записанных строк, агрегаты при этом считают каждый hit.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitStore {
+    private final EndpointHitRepository repository;
+    private final EndpointHitBatchRepository batchRepository;
+    private final StatsDictionary dictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final HourlyRollup hourlyRollup;
+    private final UniqueVisitorSketches uniqueVisitorSketches;
+    private final HitCounters hitCounters;
+    private final StatsQueryCache statsQueryCache;
+    private final HitDeduplicator deduplicator;
+    private final VisitorBitmaps visitorBitmaps;
+    private final TrendingUris trendingUris;
+    private final HitDeltaLog hitDeltaLog;
+
+    public EndpointHit save(EndpointHit hit) {
+        resolveIds(hit);
+        visitorBitmaps.prepare(List.of(hit));
+        EndpointHit saved = transactionTemplate.execute(status -> {
+            EndpointHit result = deduplicator.merge(hit) ? hit : repository.save(hit);
+            hourlyRollup.increment(List.of(result));
+            return result;
+        });
+        uniqueVisitorSketches.add(List.of(saved));
+        visitorBitmaps.add(List.of(saved));
+        trendingUris.add(List.of(saved));
+        hitDeltaLog.add(List.of(saved));
+        hitCounters.add(List.of(saved));
+        statsQueryCache.invalidate(List.of(saved));
+        return saved;
+    }
+
+    public void saveAll(List<EndpointHit> hits) {
+        hits.forEach(this::resolveIds);
+        saveResolved(hits, () -> {
+        });
+    }
+
+    /**
+     * Запись hit, у которых уже заполнены id справочников. inTransaction выполняется
+     * в той же транзакции, что и вставка строк.
+     */
+    public void saveResolved(List<EndpointHit> hits, Runnable inTransaction) {
+        visitorBitmaps.prepare(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            batchRepository.saveAll(deduplicator.collapse(hits));
+            hourlyRollup.increment(hits);
+            inTransaction.run();
+        });
+        uniqueVisitorSketches.add(hits);
+        visitorBitmaps.add(hits);
+        trendingUris.add(hits);
+        hitDeltaLog.add(hits);
+        hitCounters.add(hits);
+        statsQueryCache.invalidate(hits);
+    }
+
+    public void resolveIds(EndpointHit hit) {
+        hit.setAppId(dictionary.appId(hit.getApp()));
+        hit.setUriId(dictionary.uriId(hit.getUri()));
+    }
+}
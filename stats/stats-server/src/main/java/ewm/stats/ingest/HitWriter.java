@@ -0,0 +1,11 @@
+package ewm.stats.ingest;
+
+import ewm.stats.EndpointHit;
+
+import java.util.List;
+
+public interface HitWriter {
+    EndpointHit write(EndpointHit hit);
+
+    void writeAll(List<EndpointHit> hits);
+}
@@ -0,0 +1,6 @@
+package ewm.stats.ingest;
+
+public enum OverflowPolicy {
+    BLOCK,
+    DROP
+}
@@ -0,0 +1,25 @@
+package ewm.stats.ingest;
+
+import ewm.stats.EndpointHit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "sync", matchIfMissing = true)
+public class SyncHitWriter implements HitWriter {
+    private final HitStore hitStore;
+
+    @Override
+    public EndpointHit write(EndpointHit hit) {
+        return hitStore.save(hit);
+    }
+
+    @Override
+    public void writeAll(List<EndpointHit> hits) {
+        hitStore.saveAll(hits);
+    }
+}
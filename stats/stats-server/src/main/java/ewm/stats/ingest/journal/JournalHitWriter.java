@@ -0,0 +1,237 @@
+package ewm.stats.ingest.journal;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.ingest.HitStore;
+import ewm.stats.ingest.HitWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Запись просмотров через журнал на диске: hit дописывается в отображённый в память сегмент
+ * и сразу подтверждается, а фоновый поток пакетами загружает сегменты в endpoint_hits.
+ * Id приложений и uri получает загрузчик, поэтому приём hit не зависит от БД.
+ * Незагруженные записи переживают падение процесса и недоступность БД и догружаются
+ * после перезапуска. Загрузчик запускается, когда приложение готово: прогрев счётчиков
+ * и дозаполнение агрегатов при старте рассчитывают, что в endpoint_hits никто не пишет.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "journal")
+public class JournalHitWriter implements HitWriter {
+    private final HitStore hitStore;
+    private final JournalProgressRepository progressRepository;
+    private final Path dir;
+    private final long segmentSize;
+    private final int batchSize;
+    private final long loadIntervalMs;
+    private final Deque<JournalSegment> segments = new ConcurrentLinkedDeque<>();
+    private final Timer loadTimer;
+    private final Counter failed;
+    private final Thread loaderThread;
+    private JournalSegment active;
+    private volatile boolean running = true;
+
+    public JournalHitWriter(HitStore hitStore,
+                            JournalProgressRepository progressRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${stats.ingest.journal.dir:stats-journal}") Path dir,
+                            @Value("${stats.ingest.journal.segment-size-mb:64}") long segmentSizeMb,
+                            @Value("${stats.ingest.journal.batch-size:5000}") int batchSize,
+                            @Value("${stats.ingest.journal.load-interval-ms:200}") long loadIntervalMs) {
+        this.hitStore = hitStore;
+        this.progressRepository = progressRepository;
+        this.dir = dir;
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.batchSize = batchSize;
+        this.loadIntervalMs = loadIntervalMs;
+        Gauge.builder("stats.ingest.journal.segments", segments, Deque::size)
+                .description("Количество сегментов журнала на диске")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.journal.pending", this, JournalHitWriter::pending)
+                .description("Количество hit в журнале, ещё не загруженных в БД")
+                .register(meterRegistry);
+        this.loadTimer = Timer.builder("stats.ingest.journal.load")
+                .description("Время загрузки пакета из журнала в БД")
+                .register(meterRegistry);
+        this.failed = Counter.builder("stats.ingest.journal.load.failures")
+                .description("Неудачные попытки загрузки журнала в БД")
+                .register(meterRegistry);
+        this.loaderThread = new Thread(this::run, "stats-journal-loader");
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(dir);
+        Map<String, Integer> progress = progressRepository.findAll();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(JournalSegment::isSegmentFile)
+                    .sorted(Comparator.comparingLong(JournalSegment::parseSequence))
+                    .toList();
+        }
+        long nextSequence = 1;
+        for (Path file : files) {
+            JournalSegment segment = JournalSegment.open(file);
+            segment.setLoaded(progress.getOrDefault(segment.getName(), 0));
+            progress.remove(segment.getName());
+            segments.addLast(segment);
+            nextSequence = segment.getSequence() + 1;
+            log.info("Сегмент журнала {}: записей {}, загружено {}", segment.getName(),
+                    segment.getWritten(), segment.getLoaded());
+        }
+        // строки о сегментах, файлы которых уже удалены
+        progress.keySet().forEach(progressRepository::delete);
+        active = JournalSegment.create(dir, nextSequence, segmentSize);
+        segments.addLast(active);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLoader() {
+        log.info("Запуск загрузки журнала в БД");
+        loaderThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        loaderThread.interrupt();
+        loaderThread.join(TimeUnit.SECONDS.toMillis(30));
+        synchronized (this) {
+            active.force();
+        }
+    }
+
+    @Override
+    public EndpointHit write(EndpointHit hit) {
+        append(List.of(hit));
+        return hit;
+    }
+
+    @Override
+    public void writeAll(List<EndpointHit> hits) {
+        append(hits);
+    }
+
+    private void append(List<EndpointHit> hits) {
+        synchronized (this) {
+            for (EndpointHit hit : hits) {
+                if (!active.append(hit)) {
+                    if (active.isEmpty()) {
+                        throw new IllegalArgumentException("hit не помещается в сегмент журнала");
+                    }
+                    rotate();
+                    active.append(hit);
+                }
+            }
+        }
+    }
+
+    private void rotate() {
+        JournalSegment next;
+        try {
+            next = JournalSegment.create(dir, active.getSequence() + 1, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        active.force();
+        active.seal();
+        active = next;
+        segments.addLast(next);
+    }
+
+    private void run() {
+        while (running) {
+            boolean loaded = loadPending();
+            if (!loaded) {
+                try {
+                    Thread.sleep(loadIntervalMs);
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+        }
+        loadPending();
+    }
+
+    /**
+     * Загружает один пакет из самого старого сегмента с незагруженными записями.
+     * Возвращает true, если что-то было загружено.
+     */
+    private boolean loadPending() {
+        for (JournalSegment segment : segments) {
+            // флаг читается до числа записей: у закрытого сегмента оно уже не меняется
+            boolean sealed = segment.isSealed();
+            int written = segment.getWritten();
+            int loaded = segment.getLoaded();
+            if (loaded < written) {
+                return load(segment, loaded);
+            }
+            if (!sealed) {
+                return false;
+            }
+            remove(segment);
+        }
+        return false;
+    }
+
+    private boolean load(JournalSegment segment, int from) {
+        if (!segment.isSealed()) {
+            segment.force();
+        }
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        segment.read(from, batchSize, batch::add);
+        try {
+            batch.forEach(hitStore::resolveIds);
+            int loaded = from + batch.size();
+            loadTimer.record(() -> hitStore.saveResolved(batch,
+                    () -> progressRepository.save(segment.getName(), loaded)));
+            segment.setLoaded(loaded);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Ошибка загрузки журнала {} в БД, повтор через {} мс: {}",
+                    segment.getName(), loadIntervalMs, e.getMessage());
+            failed.increment();
+            return false;
+        }
+    }
+
+    private void remove(JournalSegment segment) {
+        try {
+            segment.delete();
+            progressRepository.delete(segment.getName());
+            segments.remove(segment);
+            log.info("Сегмент журнала {} загружен и удалён", segment.getName());
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка удаления сегмента журнала {}: {}", segment.getName(), e.getMessage());
+        }
+    }
+
+    private double pending() {
+        return segments.stream()
+                .mapToLong(segment -> segment.getWritten() - segment.getLoaded())
+                .sum();
+    }
+}
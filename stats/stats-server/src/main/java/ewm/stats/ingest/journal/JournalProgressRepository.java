@@ -0,0 +1,42 @@
+package ewm.stats.ingest.journal;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Сколько записей каждого сегмента журнала уже загружено в endpoint_hits. Обновляется
+ * в одной транзакции со вставкой строк, поэтому после перезапуска ничего не загружается дважды.
+ */
+@Repository
+@RequiredArgsConstructor
+public class JournalProgressRepository {
+    private static final String UPSERT = "INSERT INTO hit_journal_segments (segment, loaded_records) " +
+            "VALUES (:segment, :loaded) " +
+            "ON CONFLICT (segment) DO UPDATE SET loaded_records = EXCLUDED.loaded_records";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public Map<String, Integer> findAll() {
+        Map<String, Integer> result = new HashMap<>();
+        jdbcTemplate.query("SELECT segment, loaded_records FROM hit_journal_segments", rs -> {
+            result.put(rs.getString("segment"), rs.getInt("loaded_records"));
+        });
+        return result;
+    }
+
+    public void save(String segment, int loaded) {
+        jdbcTemplate.update(UPSERT, new MapSqlParameterSource()
+                .addValue("segment", segment)
+                .addValue("loaded", loaded));
+    }
+
+    public void delete(String segment) {
+        jdbcTemplate.update("DELETE FROM hit_journal_segments WHERE segment = :segment",
+                new MapSqlParameterSource("segment", segment));
+    }
+}
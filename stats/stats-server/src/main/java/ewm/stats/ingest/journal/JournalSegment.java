@@ -0,0 +1,260 @@
+package ewm.stats.ingest.journal;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.dictionary.IpAddresses;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Файл журнала, отображённый в память. Запись: длина данных, время (мкс от эпохи),
+ * ip (16 байт, IPv4 как ::ffff:a.b.c.d), приложение и uri строками UTF-8 с длиной, CRC32C.
+ * Приложение и uri хранятся строками, чтобы приём hit не обращался к справочникам в БД.
+ * Конец данных определяется по первой записи с неверной контрольной суммой.
+ */
+class JournalSegment {
+    // время, ip, длины приложения и uri; перед данными - их длина, после - контрольная сумма
+    private static final int MIN_DATA_SIZE = 8 + 16 + 2 + 2;
+    private static final int MAX_VALUE_LENGTH = 0xffff;
+    private static final String PREFIX = "hits-";
+    private static final String SUFFIX = ".journal";
+
+    private final long sequence;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final CRC32C crc = new CRC32C();
+    // число записей, доступных загрузчику; пишется только под блокировкой журнала
+    private volatile int written;
+    private volatile boolean sealed;
+    private volatile int loaded;
+    // смещение конца записанных данных; только под блокировкой журнала
+    private int position;
+    // смещение записи с номером readIndex; только в потоке загрузчика
+    private int readIndex;
+    private int readOffset;
+
+    private JournalSegment(long sequence, Path path, MappedByteBuffer buffer) {
+        this.sequence = sequence;
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    static JournalSegment create(Path dir, long sequence, long size) throws IOException {
+        Path path = dir.resolve(fileName(sequence));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new JournalSegment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * Открывает сегмент, оставшийся с прошлого запуска: он только дочитывается загрузчиком.
+     */
+    static JournalSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            JournalSegment segment = new JournalSegment(parseSequence(path), path,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            int count = 0;
+            int offset = 0;
+            while (segment.isValid(offset)) {
+                offset += recordSize(segment.buffer.getInt(offset));
+                count++;
+            }
+            segment.position = offset;
+            segment.written = count;
+            segment.sealed = true;
+            return segment;
+        }
+    }
+
+    static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    static long parseSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    /**
+     * Дописывает hit. Возвращает false, если запись не помещается в сегмент.
+     */
+    boolean append(EndpointHit hit) {
+        byte[] app = toBytes(hit.getApp(), "app");
+        byte[] uri = toBytes(hit.getUri(), "uri");
+        byte[] ip = toBytes(hit.getIp());
+        int dataSize = MIN_DATA_SIZE + app.length + uri.length;
+        int offset = position;
+        if (offset + recordSize(dataSize) > capacity) {
+            return false;
+        }
+        buffer.putInt(offset, dataSize);
+        buffer.putLong(offset + 4, toEpochMicros(hit.getTimestamp()));
+        buffer.put(offset + 12, ip);
+        buffer.putShort(offset + 28, (short) app.length);
+        buffer.put(offset + 30, app);
+        buffer.putShort(offset + 30 + app.length, (short) uri.length);
+        buffer.put(offset + 32 + app.length, uri);
+        buffer.putInt(offset + 4 + dataSize, checksum(offset, dataSize));
+        position = offset + recordSize(dataSize);
+        written++;
+        return true;
+    }
+
+    /**
+     * Пустой сегмент: запись, которая в него не поместилась, не поместится ни в какой.
+     */
+    boolean isEmpty() {
+        return written == 0;
+    }
+
+    /**
+     * Читает до max записей, начиная с from. Записи читаются по порядку, поэтому
+     * чтение продолжается с конца предыдущего, а не с начала файла.
+     */
+    void read(int from, int max, Consumer<EndpointHit> consumer) {
+        int to = Math.min(written, from + max);
+        if (from < readIndex) {
+            readIndex = 0;
+            readOffset = 0;
+        }
+        while (readIndex < from) {
+            readOffset += recordSize(buffer.getInt(readOffset));
+            readIndex++;
+        }
+        byte[] ip = new byte[16];
+        for (int i = from; i < to; i++) {
+            int offset = readOffset;
+            buffer.get(offset + 12, ip);
+            int appLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+            int uriLength = Short.toUnsignedInt(buffer.getShort(offset + 30 + appLength));
+            consumer.accept(EndpointHit.builder()
+                    .timestamp(fromEpochMicros(buffer.getLong(offset + 4)))
+                    .ip(toAddress(ip))
+                    .app(toString(offset + 30, appLength))
+                    .uri(toString(offset + 32 + appLength, uriLength))
+                    .build());
+            readOffset += recordSize(buffer.getInt(offset));
+            readIndex++;
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    String getName() {
+        return path.getFileName().toString();
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getWritten() {
+        return written;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    int getLoaded() {
+        return loaded;
+    }
+
+    void setLoaded(int loaded) {
+        this.loaded = loaded;
+    }
+
+    private boolean isValid(int offset) {
+        if (offset + recordSize(MIN_DATA_SIZE) > capacity) {
+            return false;
+        }
+        int dataSize = buffer.getInt(offset);
+        if (dataSize < MIN_DATA_SIZE || dataSize > capacity - offset - recordSize(0)) {
+            return false;
+        }
+        return buffer.getInt(offset + 4 + dataSize) == checksum(offset, dataSize);
+    }
+
+    private int checksum(int offset, int dataSize) {
+        crc.reset();
+        crc.update(buffer.slice(offset, 4 + dataSize));
+        return (int) crc.getValue();
+    }
+
+    private static int recordSize(int dataSize) {
+        return 4 + dataSize + 4;
+    }
+
+    private String toString(int offset, int length) {
+        byte[] value = new byte[length];
+        buffer.get(offset, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(String value, String name) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException("Слишком длинное значение " + name + ": " + bytes.length + " байт");
+        }
+        return bytes;
+    }
+
+    private static long toEpochMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static byte[] toBytes(String ip) {
+        byte[] address = IpAddresses.parse(ip);
+        if (address.length == 16) {
+            return address;
+        }
+        ByteBuffer mapped = ByteBuffer.allocate(16);
+        mapped.putShort(10, (short) 0xffff);
+        mapped.put(12, address);
+        return mapped.array();
+    }
+
+    private static String toAddress(byte[] ip) {
+        try {
+            // адреса вида ::ffff:a.b.c.d InetAddress сам возвращает как IPv4
+            return InetAddress.getByAddress(ip).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
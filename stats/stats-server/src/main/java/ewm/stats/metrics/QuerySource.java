@@ -0,0 +1,18 @@
+package ewm.stats.metrics;
+
+/**
+ * Откуда взят ответ на GET /stats.
+ */
+public enum QuerySource {
+    ARCHIVE,
+    COUNTERS,
+    SKETCHES,
+    BITMAPS,
+    ROLLUP,
+    PARALLEL,
+    RAW;
+
+    String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,93 @@
+package ewm.stats.metrics;
+
+import dto.StatsDto;
+import dto.TimeBucket;
+import ewm.stats.HitCount;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Метрики записи просмотров и запросов статистики. Время запросов к EndpointHitRepository
+ * публикует сам Spring Data (spring.data.repository.invocations).
+ */
+@Component
+public class StatsMetrics {
+    private final MeterRegistry meterRegistry;
+    private final boolean dedupEnabled;
+
+    public StatsMetrics(MeterRegistry meterRegistry,
+                        @Value("${stats.dedup.enabled:false}") boolean dedupEnabled) {
+        this.meterRegistry = meterRegistry;
+        this.dedupEnabled = dedupEnabled;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * Принятые hit: endpoint - hit или hits. Время - до подтверждения клиенту,
+     * в режимах buffered и journal запись в БД в него не входит.
+     */
+    public void hitsWritten(Timer.Sample sample, String endpoint, int count) {
+        sample.stop(Timer.builder("stats.hits.write")
+                .description("Время приёма hit до ответа клиенту")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry));
+        Counter.builder("stats.hits.received")
+                .description("Количество принятых hit")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    public void statsQueried(Timer.Sample sample, boolean unique, boolean withUris, List<StatsDto> result) {
+        sample.stop(Timer.builder("stats.query")
+                .description("Время ответа на GET /stats, включая кеш")
+                .tags("unique", String.valueOf(unique), "uris", String.valueOf(withUris))
+                .register(meterRegistry));
+        DistributionSummary.builder("stats.query.response.size")
+                .description("Количество строк в ответе GET /stats")
+                .tags("unique", String.valueOf(unique), "uris", String.valueOf(withUris))
+                .register(meterRegistry)
+                .record(result.size());
+    }
+
+    /**
+     * Подсчёт без кеша. Для точных запросов по endpoint_hits сумма hits равна числу
+     * просмотренных строк таблицы. Со слиянием повторов строка несёт hit_count просмотров,
+     * и сумма публикуется как stats.query.hits, а не как число строк.
+     */
+    public void statsComputed(Timer.Sample sample, QuerySource source, boolean unique, boolean withUris,
+                              List<HitCount> counts) {
+        sample.stop(Timer.builder("stats.query.compute")
+                .description("Время подсчёта статистики по источнику данных")
+                .tags("source", source.tag(), "unique", String.valueOf(unique), "uris", String.valueOf(withUris))
+                .register(meterRegistry));
+        if (source == QuerySource.RAW && !unique) {
+            DistributionSummary.builder(dedupEnabled ? "stats.query.hits" : "stats.query.rows")
+                    .description(dedupEnabled ? "Просмотры endpoint_hits, попавшие в запрос"
+                            : "Строки endpoint_hits, попавшие в запрос")
+                    .tag("uris", String.valueOf(withUris))
+                    .register(meterRegistry)
+                    .record(counts.stream().mapToLong(HitCount::getHits).sum());
+        }
+    }
+
+    public void timeSeriesQueried(Timer.Sample sample, TimeBucket bucket, boolean unique, int series) {
+        sample.stop(Timer.builder("stats.timeseries.query")
+                .description("Время ответа на GET /stats/timeseries")
+                .tags("bucket", bucket.name().toLowerCase(), "unique", String.valueOf(unique))
+                .register(meterRegistry));
+        DistributionSummary.builder("stats.timeseries.response.size")
+                .description("Количество рядов в ответе GET /stats/timeseries")
+                .register(meterRegistry)
+                .record(series);
+    }
+}
@@ -0,0 +1,197 @@
+package ewm.stats.parallel;
+
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.UriFilter;
+import ewm.stats.dictionary.IpAddresses;
+import ewm.stats.partition.HitPartitionRepository;
+import ewm.stats.sketch.HyperLogLog;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Подсчёт просмотров по длинному интервалу частями: интервал делится по существующим партициям endpoint_hits,
+ * части считаются параллельно на ограниченном пуле, результаты объединяются. Просмотры складываются,
+ * уникальные посетители - HyperLogLog-скетчами, только если сервис и так отдаёт оценку (approximate=true).
+ * Точное число уникальных посетителей считается одним запросом: объединять множества ip частей
+ * пришлось бы в памяти без ограничения.
+ */
+@Component
+public class ParallelStats {
+    private static final Comparator<HitCount> BY_HITS = Comparator.comparingLong(HitCount::getHits).reversed()
+            .thenComparingInt(HitCount::getUriId)
+            .thenComparingInt(HitCount::getAppId);
+
+    private final ParallelStatsRepository repository;
+    private final HitPartitionRepository partitionRepository;
+    private final boolean enabled;
+    private final Duration minRange;
+    private final int maxSubRanges;
+    private final ThreadPoolExecutor executor;
+
+    public ParallelStats(ParallelStatsRepository repository,
+                         HitPartitionRepository partitionRepository,
+                         @Value("${stats.parallel.enabled:false}") boolean enabled,
+                         @Value("${stats.parallel.threads:4}") int threads,
+                         @Value("${stats.parallel.queue-size:1000}") int queueSize,
+                         @Value("${stats.parallel.min-range-days:2}") int minRangeDays,
+                         @Value("${stats.parallel.max-sub-ranges:32}") int maxSubRanges) {
+        this.repository = repository;
+        this.partitionRepository = partitionRepository;
+        this.enabled = enabled;
+        this.minRange = Duration.ofDays(minRangeDays);
+        this.maxSubRanges = maxSubRanges;
+        AtomicInteger counter = new AtomicInteger();
+        // при переполнении очереди часть считается в потоке запроса
+        this.executor = enabled ? new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                task -> new Thread(task, "stats-parallel-" + counter.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy()) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Считать ли интервал частями: только при включённом режиме и интервале не короче min-range-days.
+     */
+    public boolean applies(LocalDateTime start, LocalDateTime end) {
+        return enabled && Duration.between(start, end).compareTo(minRange) >= 0;
+    }
+
+    /**
+     * Пустой результат - интервал нужно посчитать одним запросом: он попадает в одну часть,
+     * частей больше max-sub-ranges или запрошено точное число уникальных посетителей.
+     */
+    public Optional<List<HitCount>> getStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                                             boolean unique, boolean approximate) {
+        if (unique && !approximate) {
+            return Optional.empty();
+        }
+        if (uriFilter.isEmpty()) {
+            return Optional.of(List.of());
+        }
+        List<SubRange> ranges = SubRange.byPartitions(start, end, partitionRepository.findPartitionDays());
+        if (ranges.size() < 2 || ranges.size() > maxSubRanges) {
+            return Optional.empty();
+        }
+        return Optional.of(getStats(ranges, uriFilter, unique));
+    }
+
+    private List<HitCount> getStats(List<SubRange> ranges, UriFilter uriFilter, boolean unique) {
+        if (!unique) {
+            Map<AppUri, Long> counts = new HashMap<>();
+            for (List<HitCount> part : execute(ranges, range -> repository.findCounts(range, uriFilter))) {
+                for (HitCount count : part) {
+                    counts.merge(new AppUri(count.getAppId(), count.getUriId()), count.getHits(), Long::sum);
+                }
+            }
+            return sorted(counts);
+        }
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        for (Map<AppUri, HyperLogLog> part : execute(ranges, range -> findSketches(range, uriFilter))) {
+            part.forEach((key, sketch) -> sketches.merge(key, sketch, (merged, added) -> {
+                merged.merge(added);
+                return merged;
+            }));
+        }
+        Map<AppUri, Long> counts = new HashMap<>();
+        sketches.forEach((key, sketch) -> counts.put(key, sketch.estimate()));
+        return sorted(counts);
+    }
+
+    /**
+     * Считает части на пуле. После первой ошибки части из очереди не запускаются,
+     * а выполняемые прерываются и перестают читать строки.
+     */
+    private <T> List<T> execute(List<SubRange> ranges, Function<SubRange, T> task) {
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Future<T>> futures = ranges.stream()
+                .map(range -> completion.submit(() -> {
+                    if (failure.get() != null) {
+                        throw new CancellationException("Подсчёт части " + range + " отменён");
+                    }
+                    try {
+                        return task.apply(range);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    }
+                }))
+                .toList();
+        try {
+            List<T> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(completion.take().get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            // часть, отменённая из-за чужой ошибки, может завершиться раньше той, что упала
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Подсчёт по частям прерван", e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private Map<AppUri, HyperLogLog> findSketches(SubRange range, UriFilter uriFilter) {
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        repository.findVisitors(range, uriFilter, rs -> {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Подсчёт части " + range + " отменён");
+            }
+            sketches.computeIfAbsent(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new HyperLogLog())
+                    .add(IpAddresses.normalize(rs.getString("ip")));
+        });
+        return sketches;
+    }
+
+    private static List<HitCount> sorted(Map<AppUri, Long> counts) {
+        return counts.entrySet().stream()
+                .map(entry -> (HitCount) new HitCountRow(entry.getKey().appId(), entry.getKey().uriId(),
+                        entry.getValue()))
+                .sorted(BY_HITS)
+                .toList();
+    }
+
+    private record AppUri(int appId, int uriId) {
+    }
+}
@@ -0,0 +1,49 @@
+package ewm.stats.parallel;
+
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.UriFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class ParallelStatsRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Просмотры по (app, uri) за часть интервала, без сортировки и ограничения числа строк.
+     */
+    public List<HitCount> findCounts(SubRange range, UriFilter uriFilter) {
+        String sql = "SELECT app_id, uri_id, SUM(hit_count) AS hits FROM endpoint_hits " +
+                "WHERE " + timeFilter(range) + uriFilter.sql("uri_id") +
+                " GROUP BY app_id, uri_id";
+        return jdbcTemplate.query(sql, params(range, uriFilter),
+                (rs, rowNum) -> new HitCountRow(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, ip различных посетителей за часть интервала.
+     */
+    public void findVisitors(SubRange range, UriFilter uriFilter, RowCallbackHandler handler) {
+        String sql = "SELECT DISTINCT app_id, uri_id, host(ip) AS ip FROM endpoint_hits " +
+                "WHERE " + timeFilter(range) + uriFilter.sql("uri_id");
+        jdbcTemplate.query(sql, params(range, uriFilter), handler);
+    }
+
+    private static String timeFilter(SubRange range) {
+        return "timestamp >= :from AND timestamp " + (range.inclusiveEnd() ? "<=" : "<") + " :to";
+    }
+
+    private static MapSqlParameterSource params(SubRange range, UriFilter uriFilter) {
+        return uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(range.from()))
+                .addValue("to", Timestamp.valueOf(range.to())));
+    }
+}
@@ -0,0 +1,41 @@
+package ewm.stats.parallel;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Часть интервала запроса: [from, to), для последней части - [from, to].
+ */
+public record SubRange(LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+    /**
+     * Делит [start, end] по существующим суточным партициям endpoint_hits: каждая партиция - отдельная часть,
+     * промежутки между ними (строки партиции по умолчанию) - по одной части на промежуток.
+     */
+    public static List<SubRange> byPartitions(LocalDateTime start, LocalDateTime end,
+                                              Collection<LocalDate> partitionDays) {
+        List<LocalDate> days = partitionDays.stream()
+                .filter(day -> !day.isBefore(start.toLocalDate()) && !day.isAfter(end.toLocalDate()))
+                .sorted()
+                .toList();
+        List<SubRange> ranges = new ArrayList<>();
+        LocalDateTime from = start;
+        for (LocalDate day : days) {
+            LocalDateTime dayStart = day.atStartOfDay();
+            LocalDateTime dayEnd = day.plusDays(1).atStartOfDay();
+            if (from.isBefore(dayStart)) {
+                ranges.add(new SubRange(from, dayStart, false));
+                from = dayStart;
+            }
+            if (!dayEnd.isBefore(end)) {
+                break;
+            }
+            ranges.add(new SubRange(from, dayEnd, false));
+            from = dayEnd;
+        }
+        ranges.add(new SubRange(from, end, true));
+        return ranges;
+    }
+}
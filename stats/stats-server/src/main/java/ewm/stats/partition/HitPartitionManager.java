@@ -0,0 +1,125 @@
+package ewm.stats.partition;
+
+import ewm.stats.cache.StatsQueryCache;
+import ewm.stats.rollup.HourlyRollupRepository;
+import ewm.stats.sketch.HllSketchRepository;
+import ewm.stats.visitor.VisitorBitmapRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Обслуживает суточные партиции endpoint_hits: заранее создаёт партиции на premake-days вперёд,
+ * разносит по партициям строки из партиции по умолчанию и удаляет партиции старше retention-days.
+ * Вместе с партициями удаляются часовые агрегаты, HLL-скетчи и карты посетителей тех же суток.
+ * Счётчики в памяти не умеют забывать сутки, поэтому с retention-days они не включаются.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.partitions.enabled", havingValue = "true")
+public class HitPartitionManager implements SmartInitializingSingleton {
+    private final HitPartitionRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final StatsQueryCache statsQueryCache;
+    private final HourlyRollupRepository hourlyRollupRepository;
+    private final HllSketchRepository hllSketchRepository;
+    private final VisitorBitmapRepository visitorBitmapRepository;
+    private final int premakeDays;
+    private final int retentionDays;
+
+    public HitPartitionManager(HitPartitionRepository repository,
+                               TransactionTemplate transactionTemplate,
+                               StatsQueryCache statsQueryCache,
+                               HourlyRollupRepository hourlyRollupRepository,
+                               HllSketchRepository hllSketchRepository,
+                               VisitorBitmapRepository visitorBitmapRepository,
+                               @Value("${stats.partitions.premake-days:7}") int premakeDays,
+                               @Value("${stats.partitions.retention-days:0}") int retentionDays,
+                               @Value("${stats.counters.enabled:false}") boolean countersEnabled) {
+        if (retentionDays > 0 && countersEnabled) {
+            throw new IllegalStateException("stats.partitions.retention-days несовместим с stats.counters.enabled: " +
+                    "счётчики в памяти продолжали бы учитывать удалённые сутки");
+        }
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.statsQueryCache = statsQueryCache;
+        this.hourlyRollupRepository = hourlyRollupRepository;
+        this.hllSketchRepository = hllSketchRepository;
+        this.visitorBitmapRepository = visitorBitmapRepository;
+        this.premakeDays = premakeDays;
+        this.retentionDays = retentionDays;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats.partitions.maintenance-cron:0 5 * * * *}")
+    public void maintain() {
+        LocalDate today = LocalDate.now();
+        LocalDate oldestKept = retentionDays > 0 ? today.minusDays(retentionDays) : LocalDate.MIN;
+        Set<LocalDate> existing = new HashSet<>();
+        boolean removed = false;
+        for (String name : repository.findPartitions()) {
+            LocalDate day = HitPartitionRepository.partitionDay(name);
+            if (day == null) {
+                continue;
+            }
+            if (day.isBefore(oldestKept)) {
+                log.info("Удаление партиции {} старше {} дней", name, retentionDays);
+                repository.dropPartition(name);
+                removed = true;
+            } else {
+                existing.add(day);
+            }
+        }
+        if (retentionDays > 0) {
+            int deleted = repository.deleteFromDefaultPartitionBefore(oldestKept);
+            if (deleted > 0) {
+                log.info("Удалено {} просмотров старше {} дней из партиции по умолчанию", deleted, retentionDays);
+                removed = true;
+            }
+            if (deleteAggregatesBefore(oldestKept)) {
+                removed = true;
+            }
+        }
+        if (removed) {
+            statsQueryCache.invalidateAll();
+        }
+        Set<LocalDate> required = new HashSet<>(repository.findDaysInDefaultPartition());
+        for (int i = 0; i <= premakeDays; i++) {
+            required.add(today.plusDays(i));
+        }
+        required.removeAll(existing);
+        for (LocalDate day : required) {
+            if (day.isBefore(oldestKept)) {
+                continue;
+            }
+            log.info("Создание партиции {}", HitPartitionRepository.partitionName(day));
+            transactionTemplate.executeWithoutResult(status -> repository.createPartition(day));
+        }
+    }
+
+    /**
+     * Удаляет агрегаты за сутки раньше before, иначе GET /stats продолжал бы их учитывать.
+     */
+    private boolean deleteAggregatesBefore(LocalDate before) {
+        int deleted = transactionTemplate.execute(status ->
+                hourlyRollupRepository.deleteBefore(before.atStartOfDay())
+                        + hllSketchRepository.deleteBefore(before.atStartOfDay())
+                        + visitorBitmapRepository.deleteBefore(before));
+        if (deleted > 0) {
+            log.info("Удалено {} строк агрегатов старше {} дней", deleted, retentionDays);
+        }
+        return deleted > 0;
+    }
+}
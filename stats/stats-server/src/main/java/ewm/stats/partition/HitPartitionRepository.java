@@ -0,0 +1,84 @@
+package ewm.stats.partition;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Objects;
+
+@Repository
+@RequiredArgsConstructor
+public class HitPartitionRepository {
+    static final String PARTITION_PREFIX = "endpoint_hits_p";
+    static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String FIND_PARTITIONS = "SELECT c.relname FROM pg_inherits AS i " +
+            "JOIN pg_class AS c ON c.oid = i.inhrelid " +
+            "JOIN pg_class AS p ON p.oid = i.inhparent " +
+            "WHERE p.relname = 'endpoint_hits' AND c.relname LIKE 'endpoint\\_hits\\_p%'";
+
+    private static final String FIND_DEFAULT_DAYS = "SELECT DISTINCT CAST(date_trunc('day', timestamp) AS DATE) " +
+            "FROM endpoint_hits_default";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<String> findPartitions() {
+        return jdbcTemplate.queryForList(FIND_PARTITIONS, String.class);
+    }
+
+    /**
+     * Сутки, для которых есть отдельная партиция.
+     */
+    public List<LocalDate> findPartitionDays() {
+        return findPartitions().stream()
+                .map(HitPartitionRepository::partitionDay)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public List<LocalDate> findDaysInDefaultPartition() {
+        return jdbcTemplate.queryForList(FIND_DEFAULT_DAYS, LocalDate.class);
+    }
+
+    /**
+     * Создаёт партицию за сутки. Строки этих суток, успевшие попасть в партицию по умолчанию,
+     * переносятся в новую партицию до её подключения, иначе ATTACH PARTITION завершится ошибкой.
+     */
+    public void createPartition(LocalDate day) {
+        String name = partitionName(day);
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE endpoint_hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM endpoint_hits_default " +
+                "WHERE timestamp >= ? AND timestamp < ?", from, to);
+        jdbcTemplate.update("DELETE FROM endpoint_hits_default WHERE timestamp >= ? AND timestamp < ?", from, to);
+        jdbcTemplate.execute("ALTER TABLE endpoint_hits ATTACH PARTITION " + name +
+                " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+    }
+
+    public int deleteFromDefaultPartitionBefore(LocalDate day) {
+        return jdbcTemplate.update("DELETE FROM endpoint_hits_default WHERE timestamp < ?",
+                Timestamp.valueOf(day.atStartOfDay()));
+    }
+
+    static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+
+    static LocalDate partitionDay(String partitionName) {
+        try {
+            return LocalDate.parse(partitionName.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ewm.stats.rollup;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+/**
+ * Полные часы [start, end) внутри интервала запроса, для которых можно брать готовые агрегаты.
+ */
+public record FullHours(LocalDateTime start, LocalDateTime end) {
+    public static Optional<FullHours> within(LocalDateTime rangeStart, LocalDateTime rangeEnd) {
+        LocalDateTime start = rangeStart.truncatedTo(ChronoUnit.HOURS);
+        if (start.isBefore(rangeStart)) {
+            start = start.plusHours(1);
+        }
+        LocalDateTime end = rangeEnd.truncatedTo(ChronoUnit.HOURS);
+        return start.isBefore(end) ? Optional.of(new FullHours(start, end)) : Optional.empty();
+    }
+}
@@ -0,0 +1,104 @@
+package ewm.stats.rollup;
+
+import dto.TimeBucket;
+import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.UriFilter;
+import ewm.stats.timeseries.TimeSeriesRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class HourlyRollup {
+    private final HourlyRollupRepository repository;
+    private final RollupMode mode;
+
+    public HourlyRollup(HourlyRollupRepository repository,
+                        @Value("${stats.rollup.mode:OFF}") RollupMode mode) {
+        this.repository = repository;
+        this.mode = mode;
+    }
+
+    public boolean isEnabled() {
+        return mode != RollupMode.OFF;
+    }
+
+    public void increment(List<EndpointHit> hits) {
+        if (!isEnabled() || hits.isEmpty()) {
+            return;
+        }
+        // упорядочиваем ключи, чтобы параллельные транзакции блокировали строки в одном порядке
+        Map<RollupKey, Long> increments = new TreeMap<>();
+        for (EndpointHit hit : hits) {
+            RollupKey key = new RollupKey(hit.getAppId(), hit.getUriId(), hit.getTimestamp().truncatedTo(ChronoUnit.HOURS));
+            increments.merge(key, 1L, Long::sum);
+        }
+        repository.increment(increments);
+    }
+
+    public List<HitCount> getStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter, Integer limit,
+                                   Supplier<List<HitCount>> rawStats) {
+        if (uriFilter.isEmpty()) {
+            return List.of();
+        }
+        Optional<FullHours> fullHours = FullHours.within(start, end);
+        if (fullHours.isEmpty()) {
+            return rawStats.get();
+        }
+        List<HitCount> rolledUp = repository.getStats(start, end, fullHours.get().start(),
+                fullHours.get().end(), uriFilter, limit);
+        if (mode == RollupMode.VERIFY) {
+            List<HitCount> raw = rawStats.get();
+            compare(rolledUp, raw, start, end, uriFilter);
+            return raw;
+        }
+        return rolledUp;
+    }
+
+    /**
+     * Временной ряд по агрегатам. Минутные интервалы и режим VERIFY считаются по исходным данным.
+     */
+    public List<TimeSeriesRow> getTimeSeries(LocalDateTime start, LocalDateTime end, List<Integer> uriIds,
+                                             TimeBucket bucket, Supplier<List<TimeSeriesRow>> rawSeries) {
+        Optional<FullHours> fullHours = FullHours.within(start, end);
+        if (mode != RollupMode.ON || bucket == TimeBucket.MINUTE || fullHours.isEmpty()) {
+            return rawSeries.get();
+        }
+        return repository.getTimeSeries(start, end, fullHours.get().start(), fullHours.get().end(),
+                uriIds != null ? UriFilter.byIds(uriIds) : UriFilter.ALL, bucket);
+    }
+
+    private void compare(List<HitCount> rolledUp, List<HitCount> raw,
+                         LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        Map<String, Long> expected = toMap(raw);
+        Map<String, Long> actual = toMap(rolledUp);
+        if (expected.equals(actual)) {
+            return;
+        }
+        long mismatches = expected.keySet().stream()
+                .filter(key -> !Objects.equals(expected.get(key), actual.get(key)))
+                .count() + actual.keySet().stream()
+                .filter(key -> !expected.containsKey(key))
+                .count();
+        log.warn("Статистика по агрегатам расходится с исходными данными start={}, end={}, uri={}, " +
+                "расхождений={}, агрегаты={}, исходные={}", start, end, uriFilter, mismatches, actual, expected);
+    }
+
+    private Map<String, Long> toMap(List<HitCount> stats) {
+        Map<String, Long> result = new HashMap<>();
+        stats.forEach(count -> result.put(count.getAppId() + " " + count.getUriId(), count.getHits()));
+        return result;
+    }
+}
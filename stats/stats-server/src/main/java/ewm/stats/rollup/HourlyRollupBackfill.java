@@ -0,0 +1,48 @@
+package ewm.stats.rollup;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Пересчитывает endpoint_hits_hourly по уже накопленным данным. Выполняется по суткам
+ * до запуска веб-сервера, чтобы не пересекаться с инкрементальным обновлением агрегатов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.rollup.backfill-on-startup", havingValue = "true")
+public class HourlyRollupBackfill implements SmartInitializingSingleton {
+    private final HourlyRollupRepository repository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<LocalDateTime> range = repository.getHitsRange();
+        if (range.isEmpty()) {
+            log.info("Нет данных для пересчёта почасовых агрегатов");
+            return;
+        }
+        backfill(range.getFirst(), range.getLast());
+    }
+
+    public void backfill(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime dayStart = from.truncatedTo(ChronoUnit.DAYS);
+        LocalDateTime end = to.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        log.info("Пересчёт почасовых агрегатов с {} по {}", dayStart, end);
+        while (dayStart.isBefore(end)) {
+            LocalDateTime dayEnd = dayStart.plusDays(1).isBefore(end) ? dayStart.plusDays(1) : end;
+            LocalDateTime chunkStart = dayStart;
+            transactionTemplate.executeWithoutResult(status -> repository.rebuild(chunkStart, dayEnd));
+            dayStart = dayEnd;
+        }
+        log.info("Пересчёт почасовых агрегатов завершён");
+    }
+}
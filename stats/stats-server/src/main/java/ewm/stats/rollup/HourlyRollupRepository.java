@@ -0,0 +1,134 @@
+package ewm.stats.rollup;
+
+import dto.TimeBucket;
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.UriFilter;
+import ewm.stats.timeseries.TimeSeriesRepository;
+import ewm.stats.timeseries.TimeSeriesRow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class HourlyRollupRepository {
+    private static final String UPSERT = "INSERT INTO endpoint_hits_hourly (app_id, uri_id, hour_start, hits) " +
+            "VALUES (:appId, :uriId, :hour, :hits) " +
+            "ON CONFLICT (app_id, uri_id, hour_start) DO UPDATE SET hits = endpoint_hits_hourly.hits + EXCLUDED.hits";
+
+    private static final String DELETE_RANGE = "DELETE FROM endpoint_hits_hourly WHERE hour_start >= :from AND hour_start < :to";
+
+    private static final String DELETE_BEFORE = "DELETE FROM endpoint_hits_hourly WHERE hour_start < :before";
+
+    private static final String REBUILD_RANGE = "INSERT INTO endpoint_hits_hourly (app_id, uri_id, hour_start, hits) " +
+            "SELECT h.app_id, h.uri_id, date_trunc('hour', h.timestamp), SUM(h.hit_count) " +
+            "FROM endpoint_hits AS h " +
+            "WHERE h.timestamp >= :from AND h.timestamp < :to " +
+            "GROUP BY h.app_id, h.uri_id, date_trunc('hour', h.timestamp)";
+
+    private static final String HITS_RANGE = "SELECT MIN(timestamp) AS min_ts, MAX(timestamp) AS max_ts FROM endpoint_hits";
+
+    private static final RowMapper<HitCount> HIT_COUNT_MAPPER = (rs, rowNum) ->
+            new HitCountRow(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void increment(Map<RollupKey, Long> increments) {
+        MapSqlParameterSource[] params = increments.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("appId", entry.getKey().appId())
+                        .addValue("uriId", entry.getKey().uriId())
+                        .addValue("hour", Timestamp.valueOf(entry.getKey().hour()))
+                        .addValue("hits", entry.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(UPSERT, params);
+    }
+
+    /**
+     * Считает просмотры: полные часы берутся из endpoint_hits_hourly, неполные края
+     * [start, fullStart) и [fullEnd, end] - из endpoint_hits.
+     */
+    public List<HitCount> getStats(LocalDateTime start, LocalDateTime end,
+                                   LocalDateTime fullStart, LocalDateTime fullEnd,
+                                   UriFilter uriFilter, Integer limit) {
+        String uriCondition = uriFilter.sql("uri_id") + " ";
+        String sql = "SELECT app_id, uri_id, SUM(hits) AS hits FROM (" +
+                "SELECT app_id, uri_id, hits FROM endpoint_hits_hourly " +
+                "WHERE hour_start >= :fullStart AND hour_start < :fullEnd " + uriCondition +
+                "UNION ALL " +
+                "SELECT app_id, uri_id, SUM(hit_count) AS hits FROM endpoint_hits " +
+                "WHERE ((timestamp >= :start AND timestamp < :fullStart) " +
+                "OR (timestamp >= :fullEnd AND timestamp <= :end)) " + uriCondition +
+                "GROUP BY app_id, uri_id" +
+                ") AS parts " +
+                "GROUP BY app_id, uri_id " +
+                "ORDER BY hits DESC, uri_id, app_id" +
+                (limit != null ? " LIMIT :limit" : "");
+        MapSqlParameterSource params = uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd))
+                .addValue("limit", limit));
+        return jdbcTemplate.query(sql, params, HIT_COUNT_MAPPER);
+    }
+
+    /**
+     * Просмотры по интервалам bucket (не короче часа): полные часы из агрегатов, края из endpoint_hits.
+     */
+    public List<TimeSeriesRow> getTimeSeries(LocalDateTime start, LocalDateTime end,
+                                             LocalDateTime fullStart, LocalDateTime fullEnd,
+                                             UriFilter uriFilter, TimeBucket bucket) {
+        String uriCondition = uriFilter.sql("uri_id") + " ";
+        String rawBucket = TimeSeriesRepository.truncate(bucket, "timestamp");
+        String sql = "SELECT app_id, uri_id, bucket, SUM(hits) AS hits FROM (" +
+                "SELECT app_id, uri_id, " + TimeSeriesRepository.truncate(bucket, "hour_start") + " AS bucket, hits " +
+                "FROM endpoint_hits_hourly " +
+                "WHERE hour_start >= :fullStart AND hour_start < :fullEnd " + uriCondition +
+                "UNION ALL " +
+                "SELECT app_id, uri_id, " + rawBucket + " AS bucket, SUM(hit_count) AS hits FROM endpoint_hits " +
+                "WHERE ((timestamp >= :start AND timestamp < :fullStart) " +
+                "OR (timestamp >= :fullEnd AND timestamp <= :end)) " + uriCondition +
+                "GROUP BY app_id, uri_id, " + rawBucket +
+                ") AS parts " +
+                "GROUP BY app_id, uri_id, bucket " +
+                "ORDER BY app_id, uri_id, bucket";
+        MapSqlParameterSource params = uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd)));
+        return jdbcTemplate.query(sql, params, TimeSeriesRepository.ROW_MAPPER);
+    }
+
+    public void rebuild(LocalDateTime from, LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        jdbcTemplate.update(DELETE_RANGE, params);
+        jdbcTemplate.update(REBUILD_RANGE, params);
+    }
+
+    /**
+     * Удаляет агрегаты часов раньше before, возвращает число удалённых строк.
+     */
+    public int deleteBefore(LocalDateTime before) {
+        return jdbcTemplate.update(DELETE_BEFORE, new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+    }
+
+    public List<LocalDateTime> getHitsRange() {
+        return jdbcTemplate.queryForObject(HITS_RANGE, Map.of(), (rs, rowNum) -> {
+            Timestamp min = rs.getTimestamp("min_ts");
+            Timestamp max = rs.getTimestamp("max_ts");
+            return min == null ? List.of() : List.of(min.toLocalDateTime(), max.toLocalDateTime());
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package ewm.stats.rollup;
+
+import java.time.LocalDateTime;
+
+public record RollupKey(int appId, int uriId, LocalDateTime hour) implements Comparable<RollupKey> {
+    @Override
+    public int compareTo(RollupKey other) {
+        int result = Integer.compare(appId, other.appId);
+        if (result == 0) {
+            result = Integer.compare(uriId, other.uriId);
+        }
+        if (result == 0) {
+            result = hour.compareTo(other.hour);
+        }
+        return result;
+    }
+}
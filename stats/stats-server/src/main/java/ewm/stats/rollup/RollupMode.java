@@ -0,0 +1,7 @@
+package ewm.stats.rollup;
+
+public enum RollupMode {
+    OFF,
+    ON,
+    VERIFY
+}
@@ -1,7 +1,10 @@
 package ewm.stats.service;
 
 import dto.HitDto;
+import dto.StatsDeltaDto;
 import dto.StatsDto;
+import dto.TimeBucket;
+import dto.TimeSeriesDto;
 import ewm.stats.EndpointHit;
 
 import java.time.LocalDateTime;
@@ -10,5 +13,15 @@ import java.util.List;
 public interface EndpointHitService {
     EndpointHit hit(HitDto hitDto);
 
-    List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+    void hitAll(List<HitDto> hitDtos);
+
+    List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, String uriPrefix,
+                            boolean unique, boolean exact, Integer limit);
+
+    List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                      TimeBucket bucket, boolean unique);
+
+    List<StatsDto> getTrending(int window, int k);
+
+    StatsDeltaDto getDelta(String since);
 }
@@ -1,46 +1,206 @@
 package ewm.stats.service;
 
 import dto.HitDto;
+import dto.StatsDeltaDto;
 import dto.StatsDto;
+import dto.TimeBucket;
+import dto.TimeSeriesDto;
 import ewm.exception.BadRequestException;
 import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.UriFilter;
+import ewm.stats.cache.StatsQuery;
+import ewm.stats.archive.HitArchive;
+import ewm.stats.cache.StatsQueryCache;
 import ewm.stats.EndpointHitMapper;
 import ewm.stats.EndpointHitRepository;
+import ewm.stats.counter.HitCounters;
+import ewm.stats.delta.HitDeltaLog;
+import ewm.stats.dictionary.StatsDictionary;
+import ewm.stats.ingest.HitWriter;
+import ewm.stats.metrics.QuerySource;
+import ewm.stats.metrics.StatsMetrics;
+import ewm.stats.parallel.ParallelStats;
+import ewm.stats.rollup.HourlyRollup;
+import ewm.stats.sketch.UniqueVisitorSketches;
+import ewm.stats.visitor.VisitorBitmaps;
+import ewm.stats.timeseries.StatsTimeSeries;
+import ewm.stats.trending.TrendingUris;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Service
-@Transactional
 @RequiredArgsConstructor
 public class EndpointHitServiceImpl implements EndpointHitService {
     private final EndpointHitMapper mapper;
     private final EndpointHitRepository repository;
+    private final HitWriter hitWriter;
+    private final HourlyRollup hourlyRollup;
+    private final UniqueVisitorSketches uniqueVisitorSketches;
+    private final VisitorBitmaps visitorBitmaps;
+    private final HitCounters hitCounters;
+    private final StatsDictionary dictionary;
+    private final StatsQueryCache statsQueryCache;
+    private final StatsTimeSeries statsTimeSeries;
+    private final TrendingUris trendingUris;
+    private final HitArchive hitArchive;
+    private final ParallelStats parallelStats;
+    private final HitDeltaLog hitDeltaLog;
+    private final StatsMetrics metrics;
 
     @Override
-    public List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+    public List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, String uriPrefix,
+                                   boolean unique, boolean exact, Integer limit) {
         if (start.isAfter(end)) {
             throw new BadRequestException("Некорректное время");
         }
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("limit должен быть положительным");
+        }
+        Timer.Sample sample = metrics.start();
+        boolean withUris = uris != null || uriPrefix != null;
+        StatsQuery query = StatsQuery.of(start, end, uris, uriPrefix, unique, exact, limit);
+        List<StatsDto> result = statsQueryCache.get(query, () -> {
+            UriFilter uriFilter = findUris(uris, uriPrefix);
+            if (uriFilter.isEmpty()) {
+                return List.of();
+            }
+            Timer.Sample computeSample = metrics.start();
+            Counts counts = getCounts(start, end, uriFilter, unique, exact, limit);
+            metrics.statsComputed(computeSample, counts.source(), unique, withUris, counts.counts());
+            return dictionary.toStats(counts.counts());
+        });
+        metrics.statsQueried(sample, unique, withUris, result);
+        return result;
+    }
+
+    @Override
+    public List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             TimeBucket bucket, boolean unique) {
+        if (start.isAfter(end)) {
+            throw new BadRequestException("Некорректное время");
+        }
+        List<Integer> uriIds = uris != null ? dictionary.findUriIds(uris) : null;
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        Timer.Sample sample = metrics.start();
+        List<TimeSeriesDto> result = statsTimeSeries.getTimeSeries(start, end, uriIds, bucket, unique);
+        metrics.timeSeriesQueried(sample, bucket, unique, result.size());
+        return result;
+    }
+
+    @Override
+    public List<StatsDto> getTrending(int window, int k) {
+        return dictionary.toStats(trendingUris.getTrending(window, k));
+    }
+
+    @Override
+    public StatsDeltaDto getDelta(String since) {
+        HitDeltaLog.Delta delta = hitDeltaLog.getDelta(since);
+        return new StatsDeltaDto(dictionary.toStats(delta.counts()), delta.watermark(), delta.reset());
+    }
+
+    private UriFilter findUris(List<String> uris, String uriPrefix) {
+        if (uris == null) {
+            return uriPrefix != null ? UriFilter.byPrefix(uriPrefix) : UriFilter.ALL;
+        }
+        // явный список сужается префиксом по строкам, без запроса к справочнику
+        List<String> matching = uriPrefix != null
+                ? uris.stream().filter(uri -> uri.startsWith(uriPrefix)).toList()
+                : uris;
+        return UriFilter.byIds(dictionary.findUriIds(matching));
+    }
+
+    private Counts getCounts(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                             boolean unique, boolean exact, Integer limit) {
+        // агрегаты и структуры в памяти не знают, какие сутки перенесены в архив
+        Optional<List<HitCount>> archived = hitArchive.getStats(start, end, uriFilter, unique);
+        if (archived.isPresent()) {
+            return new Counts(QuerySource.ARCHIVE, limit(archived.get(), limit));
+        }
+        Optional<List<HitCount>> counted = hitCounters.getStats(start, end, uriFilter, unique);
+        if (counted.isPresent()) {
+            return new Counts(QuerySource.COUNTERS, limit(counted.get(), limit));
+        }
+        if (unique && visitorBitmaps.isEnabled()) {
+            Optional<List<HitCount>> visitors = visitorBitmaps.getUniqueStats(start, end, uriFilter);
+            if (visitors.isPresent()) {
+                return new Counts(QuerySource.BITMAPS, limit(visitors.get(), limit));
+            }
+        }
+        if (unique && !exact && uniqueVisitorSketches.isEnabled()) {
+            Optional<List<HitCount>> estimated = uniqueVisitorSketches.getUniqueStats(start, end, uriFilter);
+            if (estimated.isPresent()) {
+                return new Counts(QuerySource.SKETCHES, limit(estimated.get(), limit));
+            }
+        }
+        if (!unique && hourlyRollup.isEnabled()) {
+            return new Counts(QuerySource.ROLLUP, hourlyRollup.getStats(start, end, uriFilter, limit,
+                    () -> getRawStats(start, end, uriFilter, false, limit)));
+        }
+        if (parallelStats.applies(start, end)) {
+            Optional<List<HitCount>> split = parallelStats.getStats(start, end, uriFilter, unique,
+                    unique && !exact && uniqueVisitorSketches.isEnabled());
+            if (split.isPresent()) {
+                return new Counts(QuerySource.PARALLEL, limit(split.get(), limit));
+            }
+        }
+        return new Counts(QuerySource.RAW, getRawStats(start, end, uriFilter, unique, limit));
+    }
+
+    private List<HitCount> getRawStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                                       boolean unique, Integer limit) {
+        Limit rowLimit = limit != null ? Limit.of(limit) : Limit.unlimited();
+        List<Integer> uriIds = uriFilter.ids() != null ? List.copyOf(uriFilter.ids()) : null;
         if (unique) {
-            if (uris != null) {
-                return repository.getUniqueStatsWithUris(uris, start, end);
+            if (uriIds != null) {
+                return repository.getUniqueStatsWithUris(uriIds, start, end, rowLimit);
+            }
+            if (uriFilter.prefix() != null) {
+                return repository.getUniqueStatsWithUriPattern(uriFilter.likePattern(), start, end, rowLimit);
             }
-            return repository.getUniqueStats(start, end);
+            return repository.getUniqueStats(start, end, rowLimit);
         } else {
-            if (uris != null) {
-                return repository.getStatsWithUris(uris, start, end);
+            if (uriIds != null) {
+                return repository.getStatsWithUris(uriIds, start, end, rowLimit);
+            }
+            if (uriFilter.prefix() != null) {
+                return repository.getStatsWithUriPattern(uriFilter.likePattern(), start, end, rowLimit);
             }
-            return repository.getStats(start, end);
+            return repository.getStats(start, end, rowLimit);
         }
     }
 
+    private List<HitCount> limit(List<HitCount> counts, Integer limit) {
+        return limit != null && counts.size() > limit ? counts.subList(0, limit) : counts;
+    }
+
     @Override
     public EndpointHit hit(HitDto hitDto) {
+        Timer.Sample sample = metrics.start();
         EndpointHit endpointHit = mapper.mapDtoToModel(hitDto);
-        return repository.save(endpointHit);
+        EndpointHit written = hitWriter.write(endpointHit);
+        metrics.hitsWritten(sample, "hit", 1);
+        return written;
+    }
+
+    @Override
+    public void hitAll(List<HitDto> hitDtos) {
+        Timer.Sample sample = metrics.start();
+        List<EndpointHit> hits = hitDtos.stream()
+                .map(mapper::mapDtoToModel)
+                .toList();
+        hitWriter.writeAll(hits);
+        metrics.hitsWritten(sample, "hits", hits.size());
+    }
+
+    private record Counts(QuerySource source, List<HitCount> counts) {
     }
 }
@@ -0,0 +1,102 @@
+package ewm.stats.sketch;
+
+import ewm.stats.UriFilter;
+import ewm.stats.rollup.RollupKey;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class HllSketchRepository {
+    private static final String FIND = "SELECT registers FROM endpoint_hits_hll " +
+            "WHERE app_id = :appId AND uri_id = :uriId AND hour_start = :hour";
+
+    private static final String UPSERT = "INSERT INTO endpoint_hits_hll (app_id, uri_id, hour_start, registers) " +
+            "VALUES (:appId, :uriId, :hour, :registers) " +
+            "ON CONFLICT (app_id, uri_id, hour_start) DO UPDATE SET registers = EXCLUDED.registers";
+
+    private static final String DELETE_RANGE = "DELETE FROM endpoint_hits_hll WHERE hour_start >= :from AND hour_start < :to";
+
+    private static final String DELETE_BEFORE = "DELETE FROM endpoint_hits_hll WHERE hour_start < :before";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public HyperLogLog find(RollupKey key) {
+        List<byte[]> found = jdbcTemplate.query(FIND, keyParams(key), (rs, rowNum) -> rs.getBytes("registers"));
+        return found.isEmpty() ? null : HyperLogLog.fromBytes(found.getFirst());
+    }
+
+    public void save(RollupKey key, HyperLogLog sketch) {
+        jdbcTemplate.update(UPSERT, keyParams(key).addValue("registers", sketch.toBytes()));
+    }
+
+    public void deleteRange(LocalDateTime from, LocalDateTime to) {
+        jdbcTemplate.update(DELETE_RANGE, new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to)));
+    }
+
+    /**
+     * Удаляет скетчи часов раньше before, возвращает число удалённых строк.
+     */
+    public int deleteBefore(LocalDateTime before) {
+        return jdbcTemplate.update(DELETE_BEFORE, new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, hour_start, registers сохранённых скетчей за полные часы [fullStart, fullEnd).
+     */
+    public void findSketches(LocalDateTime fullStart, LocalDateTime fullEnd, UriFilter uriFilter,
+                             RowCallbackHandler handler) {
+        String sql = "SELECT app_id, uri_id, hour_start, registers FROM endpoint_hits_hll " +
+                "WHERE hour_start >= :fullStart AND hour_start < :fullEnd" +
+                uriFilter.sql("uri_id");
+        MapSqlParameterSource params = uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd)));
+        jdbcTemplate.query(sql, params, handler);
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, ip просмотров из неполных часов [start, fullStart) и [fullEnd, end].
+     */
+    public void findEdgeVisitors(LocalDateTime start, LocalDateTime end,
+                                 LocalDateTime fullStart, LocalDateTime fullEnd,
+                                 UriFilter uriFilter, RowCallbackHandler handler) {
+        String sql = "SELECT app_id, uri_id, host(ip) AS ip FROM endpoint_hits " +
+                "WHERE ((timestamp >= :start AND timestamp < :fullStart) " +
+                "OR (timestamp >= :fullEnd AND timestamp <= :end))" +
+                uriFilter.sql("uri_id");
+        MapSqlParameterSource params = uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd)));
+        jdbcTemplate.query(sql, params, handler);
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, hour_start, ip всех просмотров за [from, to) для пересчёта скетчей.
+     */
+    public void findVisitors(LocalDateTime from, LocalDateTime to, RowCallbackHandler handler) {
+        String sql = "SELECT app_id, uri_id, date_trunc('hour', timestamp) AS hour_start, host(ip) AS ip FROM endpoint_hits " +
+                "WHERE timestamp >= :from AND timestamp < :to";
+        jdbcTemplate.query(sql, new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to)), handler);
+    }
+
+    private MapSqlParameterSource keyParams(RollupKey key) {
+        return new MapSqlParameterSource()
+                .addValue("appId", key.appId())
+                .addValue("uriId", key.uriId())
+                .addValue("hour", Timestamp.valueOf(key.hour()));
+    }
+}
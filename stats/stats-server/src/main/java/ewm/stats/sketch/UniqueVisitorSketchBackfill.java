@@ -0,0 +1,38 @@
+package ewm.stats.sketch;
+
+import ewm.stats.rollup.HourlyRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.hll.backfill-on-startup", havingValue = "true")
+public class UniqueVisitorSketchBackfill implements SmartInitializingSingleton {
+    private final HourlyRollupRepository rollupRepository;
+    private final UniqueVisitorSketches sketches;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<LocalDateTime> range = rollupRepository.getHitsRange();
+        if (range.isEmpty()) {
+            return;
+        }
+        LocalDateTime dayStart = range.getFirst().truncatedTo(ChronoUnit.DAYS);
+        LocalDateTime end = range.getLast().truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        log.info("Пересчёт HLL-скетчей с {} по {}", dayStart, end);
+        while (dayStart.isBefore(end)) {
+            LocalDateTime dayEnd = dayStart.plusDays(1).isBefore(end) ? dayStart.plusDays(1) : end;
+            sketches.rebuild(dayStart, dayEnd);
+            dayStart = dayEnd;
+        }
+        log.info("Пересчёт HLL-скетчей завершён");
+    }
+}
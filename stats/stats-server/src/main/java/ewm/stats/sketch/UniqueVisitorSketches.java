@@ -0,0 +1,170 @@
+package ewm.stats.sketch;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.UriFilter;
+import ewm.stats.dictionary.IpAddresses;
+import ewm.stats.dictionary.StatsDictionary;
+import ewm.stats.rollup.FullHours;
+import ewm.stats.rollup.RollupKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Приблизительный подсчёт уникальных посетителей по HyperLogLog-скетчам на (app, uri, час).
+ * Новые hit попадают в скетчи в памяти, которые периодически сливаются с endpoint_hits_hll.
+ */
+@Slf4j
+@Component
+public class UniqueVisitorSketches {
+    private final HllSketchRepository repository;
+    private final StatsDictionary dictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Map<RollupKey, HyperLogLog> dirty = new ConcurrentHashMap<>();
+    // скетчи, которые сейчас сохраняются в БД: до фиксации их ещё нет в endpoint_hits_hll; не изменяются
+    private final Map<RollupKey, HyperLogLog> flushing = new ConcurrentHashMap<>();
+
+    public UniqueVisitorSketches(HllSketchRepository repository,
+                                 StatsDictionary dictionary,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${stats.hll.enabled:false}") boolean enabled) {
+        this.repository = repository;
+        this.dictionary = dictionary;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void add(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            RollupKey key = new RollupKey(hit.getAppId(), hit.getUriId(), hit.getTimestamp().truncatedTo(ChronoUnit.HOURS));
+            long hash = Hashing.hash64(hit.getIp());
+            dirty.compute(key, (k, sketch) -> {
+                HyperLogLog result = sketch == null ? new HyperLogLog() : sketch;
+                result.addHash(hash);
+                return result;
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.hll.flush-interval-ms:1000}")
+    public void flush() {
+        for (RollupKey key : dirty.keySet()) {
+            dirty.computeIfPresent(key, (k, sketch) -> {
+                flushing.merge(k, sketch, UniqueVisitorSketches::union);
+                return null;
+            });
+            HyperLogLog sketch = flushing.get(key);
+            if (sketch == null) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    HyperLogLog stored = repository.find(key);
+                    repository.save(key, stored == null ? sketch : union(sketch, stored));
+                });
+                flushing.remove(key);
+            } catch (RuntimeException e) {
+                log.error("Ошибка сохранения HLL-скетча {}: {}", key, e.getMessage());
+                dirty.merge(key, union(sketch, new HyperLogLog()), (current, failed) -> {
+                    current.merge(failed);
+                    return current;
+                });
+                flushing.remove(key);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Оценивает число уникальных ip. Возвращает пустой результат, если в интервале нет ни одного
+     * полного часа и выгоднее посчитать точно по endpoint_hits.
+     */
+    public Optional<List<HitCount>> getUniqueStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        if (uriFilter.isEmpty()) {
+            return Optional.of(List.of());
+        }
+        Optional<FullHours> fullHours = FullHours.within(start, end);
+        if (fullHours.isEmpty()) {
+            return Optional.empty();
+        }
+        LocalDateTime fullStart = fullHours.get().start();
+        LocalDateTime fullEnd = fullHours.get().end();
+        Map<AppUri, HyperLogLog> merged = new HashMap<>();
+        IntPredicate uriMatcher = uriFilter.matcher(dictionary::uri);
+        // сначала скетчи в памяти, потом БД: сброшенный за это время скетч уже будет в БД
+        mergeInMemory(dirty, merged, fullStart, fullEnd, uriMatcher);
+        mergeInMemory(flushing, merged, fullStart, fullEnd, uriMatcher);
+        repository.findSketches(fullStart, fullEnd, uriFilter, rs -> sketchFor(merged, rs.getInt("app_id"), rs.getInt("uri_id"))
+                .merge(HyperLogLog.fromBytes(rs.getBytes("registers"))));
+        repository.findEdgeVisitors(start, end, fullStart, fullEnd, uriFilter,
+                rs -> sketchFor(merged, rs.getInt("app_id"), rs.getInt("uri_id"))
+                        .add(IpAddresses.normalize(rs.getString("ip"))));
+        return Optional.of(merged.entrySet().stream()
+                .map(entry -> (HitCount) new HitCountRow(entry.getKey().appId(), entry.getKey().uriId(),
+                        entry.getValue().estimate()))
+                .sorted(Comparator.comparingLong(HitCount::getHits).reversed())
+                .toList());
+    }
+
+    public void rebuild(LocalDateTime from, LocalDateTime to) {
+        Map<RollupKey, HyperLogLog> sketches = new HashMap<>();
+        repository.findVisitors(from, to, rs -> sketches.computeIfAbsent(new RollupKey(rs.getInt("app_id"),
+                        rs.getInt("uri_id"), rs.getTimestamp("hour_start").toLocalDateTime()), key -> new HyperLogLog())
+                .add(IpAddresses.normalize(rs.getString("ip"))));
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.deleteRange(from, to);
+            sketches.forEach(repository::save);
+        });
+    }
+
+    private void mergeInMemory(Map<RollupKey, HyperLogLog> source, Map<AppUri, HyperLogLog> merged,
+                               LocalDateTime fullStart, LocalDateTime fullEnd, IntPredicate uriMatcher) {
+        for (RollupKey key : source.keySet()) {
+            if (key.hour().isBefore(fullStart) || !key.hour().isBefore(fullEnd)
+                    || !uriMatcher.test(key.uriId())) {
+                continue;
+            }
+            HyperLogLog target = sketchFor(merged, key.appId(), key.uriId());
+            source.computeIfPresent(key, (k, sketch) -> {
+                target.merge(sketch);
+                return sketch;
+            });
+        }
+    }
+
+    private static HyperLogLog union(HyperLogLog first, HyperLogLog second) {
+        HyperLogLog result = new HyperLogLog();
+        result.merge(first);
+        result.merge(second);
+        return result;
+    }
+
+    private HyperLogLog sketchFor(Map<AppUri, HyperLogLog> merged, int appId, int uriId) {
+        return merged.computeIfAbsent(new AppUri(appId, uriId), key -> new HyperLogLog());
+    }
+
+    private record AppUri(int appId, int uriId) {
+    }
+}
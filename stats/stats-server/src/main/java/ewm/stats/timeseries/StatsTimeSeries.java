@@ -0,0 +1,82 @@
+package ewm.stats.timeseries;
+
+import dto.TimeBucket;
+import dto.TimeSeriesDto;
+import dto.TimeSeriesPointDto;
+import ewm.exception.BadRequestException;
+import ewm.stats.archive.HitArchive;
+import ewm.stats.dictionary.StatsDictionary;
+import ewm.stats.rollup.HourlyRollup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Временные ряды просмотров: одна выборка с группировкой по интервалам вместо серии запросов
+ * GET /stats со сдвигающимся окном. Пустые интервалы заполняются нулями. Архивированные сутки
+ * читаются из архива.
+ */
+@Component
+public class StatsTimeSeries {
+    private final TimeSeriesRepository repository;
+    private final HitArchive hitArchive;
+    private final HourlyRollup hourlyRollup;
+    private final StatsDictionary dictionary;
+    private final long maxBuckets;
+
+    public StatsTimeSeries(TimeSeriesRepository repository,
+                           HitArchive hitArchive,
+                           HourlyRollup hourlyRollup,
+                           StatsDictionary dictionary,
+                           @Value("${stats.timeseries.max-buckets:10000}") long maxBuckets) {
+        this.repository = repository;
+        this.hitArchive = hitArchive;
+        this.hourlyRollup = hourlyRollup;
+        this.dictionary = dictionary;
+        this.maxBuckets = maxBuckets;
+    }
+
+    public List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<Integer> uriIds,
+                                             TimeBucket bucket, boolean unique) {
+        LocalDateTime first = start.truncatedTo(bucket.getUnit());
+        if (bucket.getUnit().between(first, end) >= maxBuckets) {
+            throw new BadRequestException("Слишком много интервалов, максимум " + maxBuckets);
+        }
+        List<TimeSeriesRow> rows = hitArchive.getTimeSeries(start, end, uriIds, bucket, unique)
+                .orElseGet(() -> unique
+                        ? repository.getTimeSeries(start, end, uriIds, bucket, true)
+                        : hourlyRollup.getTimeSeries(start, end, uriIds, bucket,
+                        () -> repository.getTimeSeries(start, end, uriIds, bucket, false)));
+        List<TimeSeriesDto> result = new ArrayList<>();
+        // строки отсортированы по (app, uri, bucket)
+        int from = 0;
+        while (from < rows.size()) {
+            TimeSeriesRow head = rows.get(from);
+            int to = from;
+            while (to < rows.size() && rows.get(to).appId() == head.appId() && rows.get(to).uriId() == head.uriId()) {
+                to++;
+            }
+            result.add(new TimeSeriesDto(dictionary.app(head.appId()), dictionary.uri(head.uriId()),
+                    fill(rows.subList(from, to), first, end, bucket)));
+            from = to;
+        }
+        return result;
+    }
+
+    private List<TimeSeriesPointDto> fill(List<TimeSeriesRow> rows, LocalDateTime first, LocalDateTime end,
+                                          TimeBucket bucket) {
+        List<TimeSeriesPointDto> points = new ArrayList<>();
+        int index = 0;
+        for (LocalDateTime current = first; !current.isAfter(end); current = current.plus(1, bucket.getUnit())) {
+            long hits = 0;
+            if (index < rows.size() && rows.get(index).bucket().equals(current)) {
+                hits = rows.get(index++).hits();
+            }
+            points.add(new TimeSeriesPointDto(current, hits));
+        }
+        return points;
+    }
+}
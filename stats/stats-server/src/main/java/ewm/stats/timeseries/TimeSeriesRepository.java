@@ -0,0 +1,66 @@
+package ewm.stats.timeseries;
+
+import dto.TimeBucket;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class TimeSeriesRepository {
+    public static final RowMapper<TimeSeriesRow> ROW_MAPPER = (rs, rowNum) -> new TimeSeriesRow(
+            rs.getInt("app_id"), rs.getInt("uri_id"), rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Просмотры за [start, end], сгруппированные по (app, uri, интервал bucket).
+     */
+    public List<TimeSeriesRow> getTimeSeries(LocalDateTime start, LocalDateTime end, List<Integer> uriIds,
+                                             TimeBucket bucket, boolean unique) {
+        String truncated = truncate(bucket, "timestamp");
+        String sql = "SELECT app_id, uri_id, " + truncated + " AS bucket, " +
+                (unique ? "COUNT(DISTINCT ip)" : "SUM(hit_count)") + " AS hits " +
+                "FROM endpoint_hits " +
+                "WHERE timestamp BETWEEN :start AND :end" +
+                (uriIds != null ? " AND uri_id IN (:uriIds)" : "") +
+                " GROUP BY app_id, uri_id, " + truncated +
+                " ORDER BY app_id, uri_id, bucket";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("uriIds", uriIds);
+        return jdbcTemplate.query(sql, params, ROW_MAPPER);
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, bucket, ip различных посетителей за [start, end] по интервалам bucket.
+     */
+    public void findVisitors(LocalDateTime start, LocalDateTime end, List<Integer> uriIds, TimeBucket bucket,
+                             RowCallbackHandler handler) {
+        String sql = "SELECT DISTINCT app_id, uri_id, " + truncate(bucket, "timestamp") + " AS bucket, " +
+                "host(ip) AS ip FROM endpoint_hits " +
+                "WHERE timestamp BETWEEN :start AND :end" +
+                (uriIds != null ? " AND uri_id IN (:uriIds)" : "");
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("uriIds", uriIds);
+        jdbcTemplate.query(sql, params, handler);
+    }
+
+    /**
+     * Выражение date_trunc для столбца. Единица подставляется в текст запроса, а не параметром,
+     * чтобы выражения в SELECT и GROUP BY совпадали.
+     */
+    public static String truncate(TimeBucket bucket, String column) {
+        return "date_trunc('" + bucket.name().toLowerCase() + "', " + column + ")";
+    }
+}
@@ -0,0 +1,6 @@
+package ewm.stats.timeseries;
+
+import java.time.LocalDateTime;
+
+public record TimeSeriesRow(int appId, int uriId, LocalDateTime bucket, long hits) {
+}
@@ -0,0 +1,62 @@
+package ewm.stats.trending;
+
+import ewm.stats.sketch.Hashing;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch: оценка числа вхождений ключа сверху с ошибкой не больше total * e / width
+ * с вероятностью 1 - e^-depth. Используется консервативное обновление: увеличиваются только
+ * минимальные счётчики, что заметно уменьшает завышение. Не потокобезопасен.
+ */
+class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+
+    CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[width * depth];
+    }
+
+    /**
+     * Добавляет count вхождений ключа и возвращает новую оценку.
+     */
+    long add(long key, long count) {
+        long hash = Hashing.mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long current = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            current = Math.min(current, counters[index(row, h1, h2)]);
+        }
+        long updated = current + count;
+        for (int row = 0; row < depth; row++) {
+            int index = index(row, h1, h2);
+            if (counters[index] < updated) {
+                counters[index] = updated;
+            }
+        }
+        return updated;
+    }
+
+    long estimate(long key) {
+        long hash = Hashing.mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long result = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            result = Math.min(result, counters[index(row, h1, h2)]);
+        }
+        return result;
+    }
+
+    void clear() {
+        Arrays.fill(counters, 0);
+    }
+
+    private int index(int row, int h1, int h2) {
+        return row * width + Math.floorMod(h1 + row * h2, width);
+    }
+}
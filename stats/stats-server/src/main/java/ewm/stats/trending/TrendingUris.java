@@ -0,0 +1,155 @@
+package ewm.stats.trending;
+
+import ewm.exception.BadRequestException;
+import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Самые просматриваемые uri за последние минуты без обращения к БД. На каждую минуту хранится
+ * Count-Min sketch просмотров (app, uri) и ограниченный список кандидатов с наибольшими оценками;
+ * за окно оценки кандидатов суммируются по минутным скетчам. Память не зависит от числа hit и uri.
+ */
+@Component
+public class TrendingUris {
+    private static final Comparator<HitCount> BY_HITS = Comparator.comparingLong(HitCount::getHits).reversed()
+            .thenComparingInt(HitCount::getUriId)
+            .thenComparingInt(HitCount::getAppId);
+
+    private final boolean enabled;
+    private final int maxWindow;
+    private final int candidates;
+    private final MinuteSlot[] slots;
+
+    public TrendingUris(@Value("${stats.trending.enabled:false}") boolean enabled,
+                        @Value("${stats.trending.max-window-minutes:60}") int maxWindow,
+                        @Value("${stats.trending.candidates:100}") int candidates,
+                        @Value("${stats.trending.sketch-width:2048}") int width,
+                        @Value("${stats.trending.sketch-depth:4}") int depth) {
+        this.enabled = enabled;
+        this.maxWindow = maxWindow;
+        this.candidates = candidates;
+        this.slots = new MinuteSlot[enabled ? maxWindow : 0];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new MinuteSlot(new CountMinSketch(width, depth));
+        }
+    }
+
+    public void add(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            long minute = epochMinute(hit.getTimestamp());
+            MinuteSlot slot = slots[(int) Math.floorMod(minute, (long) slots.length)];
+            synchronized (slot) {
+                if (slot.minute > minute) {
+                    // hit старше окна
+                    continue;
+                }
+                if (slot.minute < minute) {
+                    slot.reset(minute);
+                }
+                long key = (long) hit.getAppId() << 32 | hit.getUriId() & 0xffffffffL;
+                slot.offer(key, slot.sketch.add(key, 1), candidates);
+            }
+        }
+    }
+
+    /**
+     * k uri с наибольшим числом просмотров за последние window минут, включая текущую.
+     */
+    public List<HitCount> getTrending(int window, int k) {
+        if (!enabled) {
+            throw new BadRequestException("Отслеживание популярных uri отключено");
+        }
+        if (window < 1 || window > maxWindow) {
+            throw new BadRequestException("window должно быть от 1 до " + maxWindow + " минут");
+        }
+        if (k < 1 || k > candidates) {
+            throw new BadRequestException("k должно быть от 1 до " + candidates);
+        }
+        long now = epochMinute(LocalDateTime.now());
+        Set<Long> keys = new HashSet<>();
+        for (long minute = now - window + 1; minute <= now; minute++) {
+            MinuteSlot slot = slots[(int) Math.floorMod(minute, (long) slots.length)];
+            synchronized (slot) {
+                if (slot.minute == minute) {
+                    keys.addAll(slot.candidates.keySet());
+                }
+            }
+        }
+        Map<Long, Long> totals = new HashMap<>();
+        for (long minute = now - window + 1; minute <= now; minute++) {
+            MinuteSlot slot = slots[(int) Math.floorMod(minute, (long) slots.length)];
+            synchronized (slot) {
+                if (slot.minute != minute) {
+                    continue;
+                }
+                for (Long key : keys) {
+                    totals.merge(key, slot.sketch.estimate(key), Long::sum);
+                }
+            }
+        }
+        List<HitCount> result = new ArrayList<>(totals.size());
+        totals.forEach((key, hits) -> result.add(new HitCountRow((int) (key >>> 32), (int) (long) key, hits)));
+        result.sort(BY_HITS);
+        return result.size() > k ? result.subList(0, k) : result;
+    }
+
+    private static long epochMinute(LocalDateTime timestamp) {
+        return Math.floorDiv(timestamp.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static class MinuteSlot {
+        private final CountMinSketch sketch;
+        private final Map<Long, Long> candidates = new HashMap<>();
+        private long minute = Long.MIN_VALUE;
+        // нижняя граница минимальной оценки среди кандидатов
+        private long minEstimate;
+
+        MinuteSlot(CountMinSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        void reset(long minute) {
+            this.minute = minute;
+            sketch.clear();
+            candidates.clear();
+            minEstimate = 0;
+        }
+
+        void offer(long key, long estimate, int capacity) {
+            if (candidates.containsKey(key) || candidates.size() < capacity) {
+                candidates.put(key, estimate);
+                return;
+            }
+            if (estimate <= minEstimate) {
+                return;
+            }
+            Map.Entry<Long, Long> min = null;
+            for (Map.Entry<Long, Long> entry : candidates.entrySet()) {
+                if (min == null || entry.getValue() < min.getValue()) {
+                    min = entry;
+                }
+            }
+            minEstimate = min.getValue();
+            if (estimate > minEstimate) {
+                candidates.remove(min.getKey());
+                candidates.put(key, estimate);
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ewm.stats.visitor;
+
+import java.time.LocalDate;
+
+public record DayKey(int appId, int uriId, LocalDate day) {
+}
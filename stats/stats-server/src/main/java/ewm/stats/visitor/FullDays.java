@@ -0,0 +1,20 @@
+package ewm.stats.visitor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+/**
+ * Полные сутки [start, end) внутри интервала запроса, для которых можно брать готовые битовые карты.
+ */
+public record FullDays(LocalDate start, LocalDate end) {
+    public static Optional<FullDays> within(LocalDateTime rangeStart, LocalDateTime rangeEnd) {
+        LocalDateTime start = rangeStart.truncatedTo(ChronoUnit.DAYS);
+        if (start.isBefore(rangeStart)) {
+            start = start.plusDays(1);
+        }
+        LocalDateTime end = rangeEnd.truncatedTo(ChronoUnit.DAYS);
+        return start.isBefore(end) ? Optional.of(new FullDays(start.toLocalDate(), end.toLocalDate())) : Optional.empty();
+    }
+}
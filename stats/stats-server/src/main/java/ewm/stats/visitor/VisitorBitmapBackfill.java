@@ -0,0 +1,54 @@
+package ewm.stats.visitor;
+
+import ewm.stats.rollup.HourlyRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Пересчёт карт посетителей при старте: всех суток при backfill-on-startup, иначе последних recent-days
+ * суток, изменения которых могли не успеть сохраниться до остановки.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.visitors.enabled", havingValue = "true")
+public class VisitorBitmapBackfill implements SmartInitializingSingleton {
+    private final HourlyRollupRepository rollupRepository;
+    private final VisitorBitmaps bitmaps;
+    private final boolean backfill;
+    private final int recentDays;
+
+    public VisitorBitmapBackfill(HourlyRollupRepository rollupRepository,
+                                 VisitorBitmaps bitmaps,
+                                 @Value("${stats.visitors.backfill-on-startup:false}") boolean backfill,
+                                 @Value("${stats.visitors.recent-days:2}") int recentDays) {
+        this.rollupRepository = rollupRepository;
+        this.bitmaps = bitmaps;
+        this.backfill = backfill;
+        this.recentDays = recentDays;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<LocalDateTime> range = rollupRepository.getHitsRange();
+        if (range.isEmpty()) {
+            return;
+        }
+        LocalDate last = range.getLast().toLocalDate();
+        LocalDate first = range.getFirst().toLocalDate();
+        if (!backfill && first.isBefore(last.minusDays(recentDays - 1))) {
+            first = last.minusDays(recentDays - 1);
+        }
+        log.info("Пересчёт карт посетителей с {} по {}", first, last);
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            bitmaps.rebuild(day);
+        }
+        log.info("Пересчёт карт посетителей завершён");
+    }
+}
@@ -0,0 +1,124 @@
+package ewm.stats.visitor;
+
+import ewm.stats.UriFilter;
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class VisitorBitmapRepository {
+    private static final String FIND = "SELECT visitors FROM endpoint_hits_visitors " +
+            "WHERE app_id = :appId AND uri_id = :uriId AND day = :day FOR UPDATE";
+
+    private static final String UPSERT = "INSERT INTO endpoint_hits_visitors (app_id, uri_id, day, visitors) " +
+            "VALUES (:appId, :uriId, :day, :visitors) " +
+            "ON CONFLICT (app_id, uri_id, day) DO UPDATE SET visitors = EXCLUDED.visitors";
+
+    private static final String DELETE_DAY = "DELETE FROM endpoint_hits_visitors WHERE day = :day";
+
+    private static final String DELETE_BEFORE = "DELETE FROM endpoint_hits_visitors WHERE day < :before";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Сохранённая карта с блокировкой строки до конца транзакции.
+     */
+    public RoaringBitmap find(DayKey key) {
+        List<byte[]> found = jdbcTemplate.query(FIND, keyParams(key), (rs, rowNum) -> rs.getBytes("visitors"));
+        return found.isEmpty() ? null : fromBytes(found.getFirst());
+    }
+
+    public void save(DayKey key, RoaringBitmap visitors) {
+        jdbcTemplate.update(UPSERT, keyParams(key).addValue("visitors", toBytes(visitors)));
+    }
+
+    public void deleteDay(LocalDate day) {
+        jdbcTemplate.update(DELETE_DAY, new MapSqlParameterSource("day", Date.valueOf(day)));
+    }
+
+    /**
+     * Удаляет карты суток раньше before, возвращает число удалённых строк.
+     */
+    public int deleteBefore(LocalDate before) {
+        return jdbcTemplate.update(DELETE_BEFORE, new MapSqlParameterSource("before", Date.valueOf(before)));
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, visitors сохранённых карт за полные сутки [fullStart, fullEnd).
+     */
+    public void findBitmaps(LocalDate fullStart, LocalDate fullEnd, UriFilter uriFilter, RowCallbackHandler handler) {
+        String sql = "SELECT app_id, uri_id, visitors FROM endpoint_hits_visitors " +
+                "WHERE day >= :fullStart AND day < :fullEnd" +
+                uriFilter.sql("uri_id");
+        MapSqlParameterSource params = uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("fullStart", Date.valueOf(fullStart))
+                .addValue("fullEnd", Date.valueOf(fullEnd)));
+        jdbcTemplate.query(sql, params, handler);
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, ip посетителей из неполных суток [start, fullStart) и [fullEnd, end].
+     */
+    public void findEdgeVisitors(LocalDateTime start, LocalDateTime end,
+                                 LocalDateTime fullStart, LocalDateTime fullEnd,
+                                 UriFilter uriFilter, RowCallbackHandler handler) {
+        String sql = "SELECT DISTINCT app_id, uri_id, host(ip) AS ip FROM endpoint_hits " +
+                "WHERE ((timestamp >= :start AND timestamp < :fullStart) " +
+                "OR (timestamp >= :fullEnd AND timestamp <= :end))" +
+                uriFilter.sql("uri_id");
+        MapSqlParameterSource params = uriFilter.addTo(new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd)));
+        jdbcTemplate.query(sql, params, handler);
+    }
+
+    /**
+     * Построчно отдаёт app_id, uri_id, ip посетителей за сутки для пересчёта карт.
+     */
+    public void findVisitors(LocalDate day, RowCallbackHandler handler) {
+        String sql = "SELECT DISTINCT app_id, uri_id, host(ip) AS ip FROM endpoint_hits " +
+                "WHERE timestamp >= :from AND timestamp < :to";
+        jdbcTemplate.query(sql, new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(day.atStartOfDay()))
+                .addValue("to", Timestamp.valueOf(day.plusDays(1).atStartOfDay())), handler);
+    }
+
+    static RoaringBitmap fromBytes(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+
+    private static byte[] toBytes(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    private MapSqlParameterSource keyParams(DayKey key) {
+        return new MapSqlParameterSource()
+                .addValue("appId", key.appId())
+                .addValue("uriId", key.uriId())
+                .addValue("day", Date.valueOf(key.day()));
+    }
+}
@@ -0,0 +1,201 @@
+package ewm.stats.visitor;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.HitCountRow;
+import ewm.stats.UriFilter;
+import ewm.stats.dictionary.IpAddresses;
+import ewm.stats.dictionary.StatsDictionary;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Точный подсчёт уникальных посетителей по битовым картам id ip на (app, uri, сутки).
+ * Новые hit попадают в карты в памяти, которые периодически объединяются с endpoint_hits_visitors.
+ * Объединение карт идемпотентно, поэтому повторный сброс или пересчёт суток не искажает результат.
+ */
+@Slf4j
+@Component
+public class VisitorBitmaps {
+    private static final Comparator<HitCount> BY_HITS = Comparator.comparingLong(HitCount::getHits).reversed()
+            .thenComparingInt(HitCount::getUriId)
+            .thenComparingInt(HitCount::getAppId);
+
+    private final VisitorBitmapRepository repository;
+    private final StatsDictionary dictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Map<DayKey, RoaringBitmap> dirty = new ConcurrentHashMap<>();
+    // карты, которые сейчас сохраняются в БД: до фиксации их ещё нет в endpoint_hits_visitors
+    private final Map<DayKey, RoaringBitmap> flushing = new ConcurrentHashMap<>();
+
+    public VisitorBitmaps(VisitorBitmapRepository repository,
+                          StatsDictionary dictionary,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${stats.visitors.enabled:false}") boolean enabled) {
+        this.repository = repository;
+        this.dictionary = dictionary;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Заводит id для новых ip до записи hit, чтобы края интервала считались по endpoint_hits сразу после неё.
+     */
+    public void prepare(List<EndpointHit> hits) {
+        if (enabled) {
+            ipIds(hits);
+        }
+    }
+
+    public void add(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Integer> ipIds = ipIds(hits);
+        for (EndpointHit hit : hits) {
+            DayKey key = new DayKey(hit.getAppId(), hit.getUriId(), hit.getTimestamp().toLocalDate());
+            int ipId = ipIds.get(hit.getIp());
+            dirty.compute(key, (k, visitors) -> {
+                RoaringBitmap result = visitors == null ? new RoaringBitmap() : visitors;
+                result.add(ipId);
+                return result;
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.visitors.flush-interval-ms:1000}")
+    public void flush() {
+        for (DayKey key : dirty.keySet()) {
+            dirty.computeIfPresent(key, (k, visitors) -> {
+                flushing.merge(k, visitors, (flushed, added) -> RoaringBitmap.or(flushed, added));
+                return null;
+            });
+            RoaringBitmap visitors = flushing.get(key);
+            if (visitors == null) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    RoaringBitmap stored = repository.find(key);
+                    RoaringBitmap merged = visitors.clone();
+                    if (stored != null) {
+                        merged.or(stored);
+                    }
+                    repository.save(key, merged);
+                });
+                flushing.remove(key);
+            } catch (RuntimeException e) {
+                log.error("Ошибка сохранения карты посетителей {}: {}", key, e.getMessage());
+                dirty.merge(key, visitors.clone(), (current, failed) -> {
+                    current.or(failed);
+                    return current;
+                });
+                flushing.remove(key);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Точное число уникальных ip. Возвращает пустой результат, если в интервале нет ни одних
+     * полных суток и выгоднее посчитать по endpoint_hits.
+     */
+    public Optional<List<HitCount>> getUniqueStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        if (uriFilter.isEmpty()) {
+            return Optional.of(List.of());
+        }
+        Optional<FullDays> fullDays = FullDays.within(start, end);
+        if (fullDays.isEmpty()) {
+            return Optional.empty();
+        }
+        LocalDate fullStart = fullDays.get().start();
+        LocalDate fullEnd = fullDays.get().end();
+        Map<AppUri, RoaringBitmap> merged = new HashMap<>();
+        IntPredicate uriMatcher = uriFilter.matcher(dictionary::uri);
+        // сначала карты в памяти, потом БД: сброшенная за это время карта уже будет в БД
+        mergeInMemory(dirty, merged, fullStart, fullEnd, uriMatcher);
+        mergeInMemory(flushing, merged, fullStart, fullEnd, uriMatcher);
+        repository.findBitmaps(fullStart, fullEnd, uriFilter, rs -> bitmapFor(merged, rs.getInt("app_id"), rs.getInt("uri_id"))
+                .or(VisitorBitmapRepository.fromBytes(rs.getBytes("visitors"))));
+        Map<AppUri, Set<String>> edges = new HashMap<>();
+        repository.findEdgeVisitors(start, end, fullStart.atStartOfDay(), fullEnd.atStartOfDay(), uriFilter,
+                rs -> edges.computeIfAbsent(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new HashSet<>())
+                        .add(IpAddresses.normalize(rs.getString("ip"))));
+        Map<String, Integer> edgeIpIds = dictionary.ipIds(edges.values().stream().flatMap(Set::stream).toList());
+        edges.forEach((key, ips) -> {
+            RoaringBitmap target = bitmapFor(merged, key.appId(), key.uriId());
+            ips.forEach(ip -> target.add(edgeIpIds.get(ip)));
+        });
+        return Optional.of(merged.entrySet().stream()
+                .map(entry -> (HitCount) new HitCountRow(entry.getKey().appId(), entry.getKey().uriId(),
+                        entry.getValue().getLongCardinality()))
+                .sorted(BY_HITS)
+                .toList());
+    }
+
+    public void rebuild(LocalDate day) {
+        Map<DayKey, Set<String>> visitors = new HashMap<>();
+        repository.findVisitors(day, rs -> visitors.computeIfAbsent(new DayKey(rs.getInt("app_id"),
+                rs.getInt("uri_id"), day), key -> new HashSet<>()).add(IpAddresses.normalize(rs.getString("ip"))));
+        Map<String, Integer> ipIds = dictionary.ipIds(visitors.values().stream().flatMap(Set::stream).toList());
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.deleteDay(day);
+            visitors.forEach((key, ips) -> {
+                RoaringBitmap bitmap = new RoaringBitmap();
+                ips.forEach(ip -> bitmap.add(ipIds.get(ip)));
+                repository.save(key, bitmap);
+            });
+        });
+    }
+
+    private Map<String, Integer> ipIds(List<EndpointHit> hits) {
+        Set<String> ips = new HashSet<>();
+        for (EndpointHit hit : hits) {
+            ips.add(hit.getIp());
+        }
+        return dictionary.ipIds(ips);
+    }
+
+    private void mergeInMemory(Map<DayKey, RoaringBitmap> source, Map<AppUri, RoaringBitmap> merged,
+                               LocalDate fullStart, LocalDate fullEnd, IntPredicate uriMatcher) {
+        for (DayKey key : source.keySet()) {
+            if (key.day().isBefore(fullStart) || !key.day().isBefore(fullEnd)
+                    || !uriMatcher.test(key.uriId())) {
+                continue;
+            }
+            RoaringBitmap target = bitmapFor(merged, key.appId(), key.uriId());
+            source.computeIfPresent(key, (k, visitors) -> {
+                target.or(visitors);
+                return visitors;
+            });
+        }
+    }
+
+    private RoaringBitmap bitmapFor(Map<AppUri, RoaringBitmap> merged, int appId, int uriId) {
+        return merged.computeIfAbsent(new AppUri(appId, uriId), key -> new RoaringBitmap());
+    }
+
+    private record AppUri(int appId, int uriId) {
+    }
+}
@@ -1,9 +1,92 @@
 DROP TABLE IF EXISTS endpoint_hits CASCADE;
+DROP TABLE IF EXISTS endpoint_hits_hourly CASCADE;
+DROP TABLE IF EXISTS endpoint_hits_hll CASCADE;
+DROP TABLE IF EXISTS stats_apps CASCADE;
+DROP TABLE IF EXISTS stats_uris CASCADE;
+DROP TABLE IF EXISTS stats_ips CASCADE;
+DROP TABLE IF EXISTS endpoint_hits_visitors CASCADE;
+DROP TABLE IF EXISTS hit_archive_days CASCADE;
+
+-- справочники: в endpoint_hits и агрегатах хранятся только id приложений и uri
+CREATE TABLE IF NOT EXISTS stats_apps (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS stats_uris (
+    id SERIAL PRIMARY KEY,
+    uri VARCHAR(255) NOT NULL UNIQUE
+);
+
+-- плотные id ip для битовых карт посетителей (stats.visitors.enabled)
+CREATE TABLE IF NOT EXISTS stats_ips (
+    id SERIAL PRIMARY KEY,
+    ip VARCHAR(45) NOT NULL UNIQUE
+);
+
+-- поиск uri по префиксу (uriPrefix в GET /stats)
+CREATE INDEX IF NOT EXISTS stats_uris_uri_prefix_idx ON stats_uris (uri varchar_pattern_ops);
 
 CREATE TABLE IF NOT EXISTS endpoint_hits (
-    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    app VARCHAR(255),
-    uri VARCHAR(255),
-    ip VARCHAR(50),
-    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
-)
\ No newline at end of file
+    id BIGSERIAL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    -- число одинаковых hit (app, uri, ip), свёрнутых в строку (stats.dedup.enabled)
+    hit_count INTEGER NOT NULL DEFAULT 1,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+-- суточные партиции endpoint_hits_pYYYYMMDD создаёт HitPartitionManager
+CREATE TABLE IF NOT EXISTS endpoint_hits_default PARTITION OF endpoint_hits DEFAULT;
+
+CREATE INDEX IF NOT EXISTS endpoint_hits_uri_id_timestamp_idx ON endpoint_hits (uri_id, timestamp);
+CREATE INDEX IF NOT EXISTS endpoint_hits_timestamp_idx ON endpoint_hits (timestamp);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_hourly (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    hour_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app_id, uri_id, hour_start)
+);
+
+CREATE INDEX IF NOT EXISTS endpoint_hits_hourly_hour_start_idx ON endpoint_hits_hourly (hour_start);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_hll (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    hour_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    registers BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, hour_start)
+);
+
+CREATE INDEX IF NOT EXISTS endpoint_hits_hll_hour_start_idx ON endpoint_hits_hll (hour_start);
+
+-- сжатые (Roaring) битовые карты id ip посетителей за сутки
+CREATE TABLE IF NOT EXISTS endpoint_hits_visitors (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    day DATE NOT NULL,
+    visitors BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, day)
+);
+
+CREATE INDEX IF NOT EXISTS endpoint_hits_visitors_day_idx ON endpoint_hits_visitors (day);
+
+-- сколько записей каждого сегмента журнала (stats.ingest.mode=journal) загружено в endpoint_hits;
+-- не пересоздаётся при старте, чтобы после перезапуска догрузить только незагруженный хвост сегментов
+CREATE TABLE IF NOT EXISTS hit_journal_segments (
+    segment VARCHAR(64) PRIMARY KEY,
+    loaded_records INTEGER NOT NULL
+);
+
+-- сутки, перенесённые из endpoint_hits в архивные файлы (stats.archive.enabled)
+CREATE TABLE IF NOT EXISTS hit_archive_days (
+    day DATE PRIMARY KEY,
+    file VARCHAR(64) NOT NULL,
+    rows BIGINT NOT NULL,
+    hits BIGINT NOT NULL,
+    archived_at TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
@@ -0,0 +1,119 @@
+package ewm.stats.admission;
+
+import ewm.exception.BadRequestException;
+import ewm.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitAdmissionTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch finish = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        finish.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void passesThroughWhenDisabled() {
+        HitAdmission admission = admission(false, 1, 0, 0, 200);
+
+        assertThat(admission.execute(() -> 42)).isEqualTo(42);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws InterruptedException {
+        HitAdmission admission = admission(true, 1, 0, 1_000, 200);
+        occupy(admission);
+
+        assertThatThrownBy(() -> admission.execute(() -> 1)).isInstanceOf(TooManyRequestsException.class);
+        assertThat(rejected("queue_full")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsAfterMaxWait() throws InterruptedException {
+        HitAdmission admission = admission(true, 1, 10, 50, 200);
+        occupy(admission);
+
+        long startedAt = System.nanoTime();
+        assertThatThrownBy(() -> admission.execute(() -> 1)).isInstanceOf(TooManyRequestsException.class);
+        assertThat(System.nanoTime() - startedAt).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(rejected("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void admitsWaiterWhenSlotIsReleased() throws Exception {
+        HitAdmission admission = admission(true, 1, 10, 5_000, 200);
+        occupy(admission);
+
+        CompletableFuture<Integer> waiter = CompletableFuture.supplyAsync(() -> admission.execute(() -> 7), executor);
+        finish.countDown();
+
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo(7);
+    }
+
+    @Test
+    void capsQueueByTomcatThreads() throws InterruptedException {
+        HitAdmission admission = admission(true, 1, 50, 5_000, 1);
+        occupy(admission);
+
+        assertThatThrownBy(() -> admission.execute(() -> 1)).isInstanceOf(TooManyRequestsException.class);
+        assertThat(rejected("queue_full")).isEqualTo(1);
+    }
+
+    @Test
+    void lowersLimitOnFailureButNotOnBadRequest() {
+        HitAdmission admission = admission(true, 10, 10, 100, 200);
+
+        assertThatThrownBy(() -> admission.execute(() -> {
+            throw new BadRequestException("некорректный hit");
+        })).isInstanceOf(BadRequestException.class);
+        assertThat(limit()).isEqualTo(10);
+
+        assertThatThrownBy(() -> admission.execute(() -> {
+            throw new IllegalStateException("ошибка БД");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(limit()).isEqualTo(9);
+    }
+
+    private HitAdmission admission(boolean enabled, int initialLimit, int queueSize, long maxWaitMs, int maxThreads) {
+        return new HitAdmission(meterRegistry, enabled, initialLimit, 1, 200, queueSize, maxWaitMs, 1_000, 0.9,
+                maxThreads);
+    }
+
+    /**
+     * Занимает слот записи, пока тест не отпустит finish.
+     */
+    private void occupy(HitAdmission admission) throws InterruptedException {
+        executor.execute(() -> admission.execute(() -> {
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("stats.admission.rejected").tag("reason", reason).counter().count();
+    }
+
+    private double limit() {
+        return meterRegistry.get("stats.admission.limit").gauge().value();
+    }
+}
@@ -0,0 +1,183 @@
+package ewm.stats.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchiveFileTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 1);
+    private static final long DAY_MICROS = DAY.toEpochDay() * 86_400_000_000L;
+    private static final int BLOCK_SIZE = 3;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWrittenRows() throws IOException {
+        List<Row> rows = List.of(
+                // одинаковое время, разность 0
+                new Row(DAY_MICROS, 1, 1, ipv4("10.0.0.1"), 1),
+                new Row(DAY_MICROS, 1, 1, ipv4("10.0.0.1"), 1),
+                // разности на 1, 2 и больше байт varint
+                new Row(DAY_MICROS + 100, 127, 128, ipv6("2001:db8::1"), 127),
+                new Row(DAY_MICROS + 20_000, 16_384, 300_000, ipv4("192.168.255.255"), 128),
+                new Row(DAY_MICROS + 86_399_999_999L, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                        ipv6("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"), Integer.MAX_VALUE),
+                new Row(DAY_MICROS + 86_399_999_999L, 2, 3, ipv4("0.0.0.0"), 2),
+                new Row(DAY_MICROS + 86_399_999_999L, 2, 3, ipv6("::1"), 3));
+        Path file = write(rows);
+
+        assertThat(scan(file, Long.MIN_VALUE, Long.MAX_VALUE)).isEqualTo(rows);
+    }
+
+    @Test
+    void keepsIpFamilies() throws IOException {
+        Path file = write(List.of(
+                new Row(DAY_MICROS, 1, 1, ipv4("127.0.0.1"), 1),
+                new Row(DAY_MICROS + 1, 1, 1, ipv6("::ffff:127.0.0.1"), 1),
+                new Row(DAY_MICROS + 2, 1, 1, ipv6("2001:db8:0:0:0:0:0:1"), 1)));
+
+        List<Row> read = scan(file, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        // IPv4 хранится 4 байтами, IPv6 - 16, в том числе IPv4-mapped
+        assertThat(read).extracting(row -> row.ip().length).containsExactly(4, 16, 16);
+        assertThat(InetAddress.getByAddress(read.get(0).ip()).getHostAddress()).isEqualTo("127.0.0.1");
+        assertThat(InetAddress.getByAddress(read.get(2).ip()).getHostAddress()).isEqualTo("2001:db8:0:0:0:0:0:1");
+    }
+
+    @Test
+    void filtersRowsByInclusiveRange() throws IOException {
+        List<Row> rows = rows(7);
+        Path file = write(rows);
+
+        assertThat(scan(file, rows.get(2).micros(), rows.get(4).micros())).isEqualTo(rows.subList(2, 5));
+        assertThat(scan(file, rows.get(6).micros() + 1, Long.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    void skipsBlocksOutsideRange() throws IOException {
+        // три блока: строки 0-2, 3-5, 6
+        List<Row> rows = rows(7);
+        Path file = write(rows);
+        corruptFirstBlock(file);
+
+        assertThat(scan(file, rows.get(3).micros(), Long.MAX_VALUE)).isEqualTo(rows.subList(3, 7));
+        assertThatThrownBy(() -> scan(file, rows.get(2).micros(), rows.get(3).micros()))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void storesNamesOfUsedIds() throws IOException {
+        Path file = write(List.of(
+                new Row(DAY_MICROS, 1, 10, ipv4("10.0.0.1"), 1),
+                new Row(DAY_MICROS + 1, 2, 10, ipv4("10.0.0.2"), 2),
+                new Row(DAY_MICROS + 2, 2, 300_000, ipv4("10.0.0.3"), 3)));
+
+        ArchiveFileReader.ArchiveSummary summary = ArchiveFileReader.readSummary(file);
+
+        assertThat(summary.day()).isEqualTo(DAY);
+        assertThat(summary.rows()).isEqualTo(3);
+        assertThat(summary.hits()).isEqualTo(6);
+        assertThat(summary.apps()).isEqualTo(Map.of(1, "app-1", 2, "app-2"));
+        assertThat(summary.uris()).isEqualTo(Map.of(10, "/uri/10", 300_000, "/uri/300000"));
+    }
+
+    @Test
+    void rejectsUnorderedRows() throws IOException {
+        try (ArchiveFileWriter writer = new ArchiveFileWriter(dir.resolve("hits.col"), DAY, BLOCK_SIZE)) {
+            writer.append(DAY_MICROS + 1, 1, 1, ipv4("10.0.0.1"), 1);
+
+            assertThatThrownBy(() -> writer.append(DAY_MICROS, 1, 1, ipv4("10.0.0.1"), 1))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private Path write(List<Row> rows) throws IOException {
+        Path file = dir.resolve("hits.col");
+        try (ArchiveFileWriter writer = new ArchiveFileWriter(file, DAY, BLOCK_SIZE)) {
+            for (Row row : rows) {
+                writer.append(row.micros(), row.appId(), row.uriId(), row.ip(), row.hitCount());
+            }
+            writer.finish(id -> "app-" + id, id -> "/uri/" + id);
+            assertThat(writer.getTotalRows()).isEqualTo(rows.size());
+        }
+        return file;
+    }
+
+    private static List<Row> scan(Path file, long startMicros, long endMicros) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        ArchiveFileReader.scan(file, startMicros, endMicros,
+                (micros, appId, uriId, ip, hitCount) -> rows.add(new Row(micros, appId, uriId, ip, hitCount)));
+        return rows;
+    }
+
+    private static List<Row> rows(int count) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Row(DAY_MICROS + i * 1_000_000L, i, i + 1, ipv4("10.0.0." + i), i + 1));
+        }
+        return rows;
+    }
+
+    /**
+     * Портит начало первого блока: он идёт сразу за заголовком из 16 байт.
+     */
+    private static void corruptFirstBlock(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff}), 16);
+        }
+    }
+
+    private static byte[] ipv4(String ip) {
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static byte[] ipv6(String ip) {
+        // InetAddress сворачивает ::ffff:a.b.c.d в IPv4, поэтому 16 байт собираются вручную
+        try {
+            byte[] address = InetAddress.getByName(ip).getAddress();
+            if (address.length == 16) {
+                return address;
+            }
+            byte[] mapped = new byte[16];
+            mapped[10] = (byte) 0xff;
+            mapped[11] = (byte) 0xff;
+            System.arraycopy(address, 0, mapped, 12, 4);
+            return mapped;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private record Row(long micros, int appId, int uriId, byte[] ip, int hitCount) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Row row && micros == row.micros && appId == row.appId && uriId == row.uriId
+                    && Arrays.equals(ip, row.ip) && hitCount == row.hitCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(micros, appId, uriId, Arrays.hashCode(ip), hitCount);
+        }
+    }
+}
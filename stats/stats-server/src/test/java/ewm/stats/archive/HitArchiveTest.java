@@ -0,0 +1,111 @@
+package ewm.stats.archive;
+
+import ewm.stats.HitCount;
+import ewm.stats.UriFilter;
+import ewm.stats.archive.HitArchiveRepository.ArchivedDay;
+import ewm.stats.dictionary.StatsDictionary;
+import ewm.stats.timeseries.TimeSeriesRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HitArchiveTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 1);
+    private static final String FILE = "hits-20261001.col";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsArchivedDayAfterRestart() throws Exception {
+        HitArchiveRepository repository = mock(HitArchiveRepository.class);
+        StatsDictionary dictionary = mock(StatsDictionary.class);
+        when(dictionary.app(1)).thenReturn("ewm-main-service");
+        when(dictionary.uri(10)).thenReturn("/events/1");
+        when(dictionary.uri(11)).thenReturn("/events/2");
+        List<ResultSet> rows = List.of(
+                row("2026-10-01T10:00:00", 1, 10, "10.0.0.1", 1),
+                row("2026-10-01T11:00:00", 1, 11, "10.0.0.2", 2),
+                row("2026-10-01T12:00:00", 1, 10, "2001:db8::1", 3));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet rs : rows) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(repository).findDayHits(eq(DAY), any());
+        when(repository.deleteDay(DAY)).thenReturn(rows.size());
+
+        archive(repository, dictionary).archiveDay(DAY);
+
+        assertThat(dir.resolve(FILE)).exists();
+        verify(repository).saveDay(DAY, FILE, 3, 6);
+
+        // после перезапуска оглавление и справочники пустые, имена получают новые id
+        HitArchiveRepository restartedRepository = mock(HitArchiveRepository.class);
+        StatsDictionary restartedDictionary = mock(StatsDictionary.class);
+        when(restartedDictionary.appId("ewm-main-service")).thenReturn(7);
+        when(restartedDictionary.uriId("/events/1")).thenReturn(20);
+        when(restartedDictionary.uriId("/events/2")).thenReturn(21);
+        HitArchive restarted = archive(restartedRepository, restartedDictionary);
+
+        restarted.rebuildIndex();
+
+        verify(restartedRepository).saveDay(DAY, FILE, 3, 6);
+        when(restartedRepository.findArchivedDays(DAY, DAY)).thenReturn(List.of(new ArchivedDay(DAY, FILE)));
+        List<HitCount> counts = restarted.getStats(DAY.atStartOfDay(), DAY.atTime(23, 59, 59), UriFilter.ALL, false)
+                .orElseThrow();
+        assertThat(counts).extracting(HitCount::getAppId, HitCount::getUriId, HitCount::getHits)
+                .containsExactly(tuple(7, 20, 4L), tuple(7, 21, 2L));
+        List<HitCount> unique = restarted.getStats(DAY.atStartOfDay(), DAY.atTime(23, 59, 59),
+                UriFilter.byIds(List.of(20)), true).orElseThrow();
+        assertThat(unique).extracting(HitCount::getUriId, HitCount::getHits).containsExactly(tuple(20, 2L));
+    }
+
+    @Test
+    void doesNotOverwriteExistingArchive() throws Exception {
+        Files.writeString(dir.resolve(FILE), "old");
+        HitArchiveRepository repository = mock(HitArchiveRepository.class);
+
+        assertThatThrownBy(() -> archive(repository, mock(StatsDictionary.class)).archiveDay(DAY))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(Files.readString(dir.resolve(FILE))).isEqualTo("old");
+    }
+
+    private HitArchive archive(HitArchiveRepository repository, StatsDictionary dictionary) {
+        return new HitArchive(repository, mock(TimeSeriesRepository.class), dictionary,
+                mock(PlatformTransactionManager.class), true,
+                dir.toString(), 2);
+    }
+
+    private static ResultSet row(String timestamp, int appId, int uriId, String ip, int hitCount)
+            throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getTimestamp("timestamp")).thenReturn(Timestamp.valueOf(LocalDateTime.parse(timestamp)));
+        when(rs.getInt("app_id")).thenReturn(appId);
+        when(rs.getInt("uri_id")).thenReturn(uriId);
+        when(rs.getString("ip")).thenReturn(ip);
+        when(rs.getInt("hit_count")).thenReturn(hitCount);
+        return rs;
+    }
+}
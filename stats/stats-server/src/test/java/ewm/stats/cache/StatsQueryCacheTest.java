@@ -0,0 +1,76 @@
+package ewm.stats.cache;
+
+import dto.StatsDto;
+import ewm.stats.EndpointHit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsQueryCacheTest {
+    private static final LocalDateTime START = LocalDateTime.of(2026, 10, 1, 0, 0);
+    private static final LocalDateTime PAST_END = LocalDateTime.of(2026, 10, 2, 12, 0, 10);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void sharesKeyWithinGranularity() {
+        StatsQueryCache cache = cache(60_000);
+
+        get(cache, PAST_END);
+        get(cache, PAST_END.plusSeconds(40));
+
+        assertThat(loads).hasValue(1);
+        get(cache, PAST_END.plusSeconds(50));
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void invalidatesPastQueryOnCoveredHit() {
+        StatsQueryCache cache = cache(60_000);
+        get(cache, PAST_END);
+
+        cache.invalidate(List.of(hit("/events/2", PAST_END.minusHours(1))));
+        get(cache, PAST_END);
+        assertThat(loads).hasValue(1);
+
+        // в ключе интервал до конца минуты, в которую попадает end
+        cache.invalidate(List.of(hit("/events/1", PAST_END.plusSeconds(30))));
+        get(cache, PAST_END);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void keepsLiveQueryUntilStale() throws InterruptedException {
+        StatsQueryCache cache = cache(200);
+        LocalDateTime now = LocalDateTime.now();
+        get(cache, now);
+
+        cache.invalidate(List.of(hit("/events/1", now)));
+        get(cache, now);
+        assertThat(loads).hasValue(1);
+
+        Thread.sleep(300);
+        get(cache, now);
+        assertThat(loads).hasValue(2);
+    }
+
+    private StatsQueryCache cache(long maxStalenessMs) {
+        return new StatsQueryCache(new SimpleMeterRegistry(), true, 100, 60, maxStalenessMs);
+    }
+
+    private void get(StatsQueryCache cache, LocalDateTime end) {
+        cache.get(StatsQuery.of(START, end, List.of("/events/1"), null, false, false, null), () -> {
+            loads.incrementAndGet();
+            return List.of(new StatsDto("ewm-main-service", "/events/1", 1L));
+        });
+    }
+
+    private static EndpointHit hit(String uri, LocalDateTime timestamp) {
+        return EndpointHit.builder().app("ewm-main-service").uri(uri).ip("10.0.0.1").timestamp(timestamp).build();
+    }
+}
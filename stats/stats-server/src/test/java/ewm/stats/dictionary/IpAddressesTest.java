@@ -0,0 +1,38 @@
+package ewm.stats.dictionary;
+
+import ewm.exception.BadRequestException;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IpAddressesTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "192.168.0.1, 192.168.0.1",
+            "0.0.0.0, 0.0.0.0",
+            "255.255.255.255, 255.255.255.255",
+            "::, ::",
+            "::1, ::1",
+            "2001:0DB8:0000:0000:0000:0000:0000:0001, 2001:db8::1",
+            "2001:db8:0:1:0:0:0:1, 2001:db8:0:1::1",
+            "2001:db8::, 2001:db8::",
+            "1:0:0:2:0:0:0:3, 1:0:0:2::3",
+            "::ffff:10.0.0.1, 10.0.0.1",
+            "64:ff9b::192.0.2.33, 64:ff9b::c000:221"
+    })
+    void normalizesLiterals(String ip, String expected) {
+        assertThat(IpAddresses.normalize(ip)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "999.1.1.1", "1.2.3", "1.2.3.4.5", "1..2.3", "1.2.3.-4", "localhost",
+            "example.com", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", ":::", "12345::1", "::g",
+            "1.2.3.4::1", "fe80::1%eth0", "::1.2.3.256", "１.2.3.4"})
+    void rejectsNonLiterals(String ip) {
+        assertThatThrownBy(() -> IpAddresses.parse(ip)).isInstanceOf(BadRequestException.class);
+    }
+}
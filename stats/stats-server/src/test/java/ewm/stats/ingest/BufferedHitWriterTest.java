@@ -0,0 +1,102 @@
+package ewm.stats.ingest;
+
+import ewm.exception.TooManyRequestsException;
+import ewm.stats.EndpointHit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class BufferedHitWriterTest {
+    private final HitStore hitStore = mock(HitStore.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<EndpointHit> saved = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private BufferedHitWriter writer;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        failures.set(0);
+        writer.stop();
+    }
+
+    @Test
+    void retriesFailedBatch() throws InterruptedException {
+        failures.set(2);
+        writer = writer(100, OverflowPolicy.BLOCK);
+
+        writer.writeAll(List.of(hit(), hit(), hit()));
+        waitUntil(() -> depth() == 0);
+
+        assertThat(saved).hasSize(3);
+    }
+
+    @Test
+    void rejectsWhenFullAndKeepsFailedBatchInCapacity() throws InterruptedException {
+        failures.set(Integer.MAX_VALUE);
+        writer = writer(2, OverflowPolicy.BLOCK);
+
+        writer.writeAll(List.of(hit(), hit()));
+        assertThatThrownBy(() -> writer.write(hit())).isInstanceOf(TooManyRequestsException.class);
+
+        failures.set(0);
+        waitUntil(() -> depth() == 0);
+        writer.write(hit());
+        waitUntil(() -> saved.size() == 3);
+        assertThat(meterRegistry.get("stats.ingest.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsWholeBatchThatDoesNotFit() {
+        failures.set(Integer.MAX_VALUE);
+        writer = writer(2, OverflowPolicy.DROP);
+        writer.write(hit());
+
+        assertThatThrownBy(() -> writer.writeAll(List.of(hit(), hit()))).isInstanceOf(TooManyRequestsException.class);
+        assertThat(depth()).isEqualTo(1);
+    }
+
+    private BufferedHitWriter writer(int capacity, OverflowPolicy overflow) {
+        doAnswer(invocation -> {
+            if (failures.getAndUpdate(left -> Math.max(left - 1, 0)) > 0) {
+                throw new IllegalStateException("БД недоступна");
+            }
+            saved.addAll(invocation.getArgument(0));
+            return null;
+        }).when(hitStore).saveAll(anyList());
+        BufferedHitWriter result = new BufferedHitWriter(hitStore, meterRegistry, capacity, 10, 20, overflow, 50, 40);
+        result.start();
+        return result;
+    }
+
+    private double depth() {
+        return meterRegistry.get("stats.ingest.buffer.depth").gauge().value();
+    }
+
+    private static EndpointHit hit() {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri("/events/1")
+                .ip("10.0.0.1")
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long until = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean() && System.nanoTime() < until) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ewm.stats.ingest.journal;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.dictionary.IpAddresses;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JournalSegmentTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 10, 1, 10, 15, 30, 123_456_000);
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void readsBackAppendedHits() throws IOException {
+        JournalSegment segment = JournalSegment.create(dir, 1, 4096);
+        List<EndpointHit> hits = List.of(
+                hit("/events/1", "10.0.0.1", TIME),
+                hit("/события/2", "2001:db8::1", TIME.plusSeconds(1)),
+                hit("/events/3?x=1&y=2", "::ffff:192.168.1.1", TIME.minusYears(30)));
+        hits.forEach(hit -> assertThat(segment.append(hit)).isTrue());
+
+        List<EndpointHit> read = read(segment, 0, 10);
+
+        assertThat(segment.getWritten()).isEqualTo(3);
+        assertThat(read).hasSize(3);
+        for (int i = 0; i < hits.size(); i++) {
+            assertThat(read.get(i).getApp()).isEqualTo(hits.get(i).getApp());
+            assertThat(read.get(i).getUri()).isEqualTo(hits.get(i).getUri());
+            assertThat(read.get(i).getTimestamp()).isEqualTo(hits.get(i).getTimestamp());
+            assertThat(IpAddresses.normalize(read.get(i).getIp()))
+                    .isEqualTo(IpAddresses.normalize(hits.get(i).getIp()));
+        }
+        assertThat(read.get(2).getIp()).isEqualTo("192.168.1.1");
+    }
+
+    @Test
+    void readsFromPosition() throws IOException {
+        JournalSegment segment = JournalSegment.create(dir, 1, 4096);
+        for (int i = 0; i < 5; i++) {
+            segment.append(hit("/events/" + i, "10.0.0.1", TIME));
+        }
+
+        assertThat(read(segment, 1, 2)).extracting(EndpointHit::getUri).containsExactly("/events/1", "/events/2");
+        assertThat(read(segment, 3, 10)).extracting(EndpointHit::getUri).containsExactly("/events/3", "/events/4");
+        assertThat(read(segment, 0, 1)).extracting(EndpointHit::getUri).containsExactly("/events/0");
+    }
+
+    @Test
+    void rejectsHitThatDoesNotFit() throws IOException {
+        JournalSegment segment = JournalSegment.create(dir, 1, 128);
+
+        assertThat(segment.append(hit("/events/1", "10.0.0.1", TIME))).isTrue();
+        assertThat(segment.append(hit("/events/" + "x".repeat(100), "10.0.0.1", TIME))).isFalse();
+        assertThat(segment.getWritten()).isEqualTo(1);
+    }
+
+    @Test
+    void reopensUpToLastValidRecord() throws IOException {
+        JournalSegment segment = JournalSegment.create(dir, 7, 4096);
+        segment.append(hit("/events/1", "10.0.0.1", TIME));
+        segment.append(hit("/events/2", "10.0.0.2", TIME));
+        segment.force();
+        Path path = dir.resolve(segment.getName());
+        // длина, время, ip, приложение и uri с длинами, контрольная сумма
+        int firstRecordSize = 4 + 8 + 16 + 2 + "ewm-main-service".length() + 2 + "/events/1".length() + 4;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            // портим время второй записи: её контрольная сумма больше не сходится
+            channel.write(ByteBuffer.wrap(new byte[]{42}), firstRecordSize + 4);
+        }
+
+        JournalSegment reopened = JournalSegment.open(path);
+
+        assertThat(JournalSegment.isSegmentFile(path)).isTrue();
+        assertThat(JournalSegment.parseSequence(path)).isEqualTo(7);
+        assertThat(reopened.isSealed()).isTrue();
+        assertThat(reopened.getWritten()).isEqualTo(1);
+        assertThat(read(reopened, 0, 10)).extracting(EndpointHit::getUri).containsExactly("/events/1");
+    }
+
+    private static List<EndpointHit> read(JournalSegment segment, int from, int max) {
+        List<EndpointHit> hits = new ArrayList<>();
+        segment.read(from, max, hits::add);
+        return hits;
+    }
+
+    private static EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder().app("ewm-main-service").uri(uri).ip(ip).timestamp(timestamp).build();
+    }
+}
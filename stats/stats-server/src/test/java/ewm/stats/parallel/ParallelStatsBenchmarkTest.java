@@ -0,0 +1,86 @@
+package ewm.stats.parallel;
+
+import ewm.stats.EndpointHitRepository;
+import ewm.stats.HitCount;
+import ewm.stats.UriFilter;
+import ewm.stats.rollup.HourlyRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+/**
+ * Замер на данных рабочей БД: один запрос EndpointHitRepository против подсчёта частями по всему интервалу
+ * просмотров в endpoint_hits. Запускается только явно: mvn test -Dstats.benchmark=true;
+ * берёт настройки БД из src/main/resources/application.properties и не пересоздаёт схему. Перед замером каждый вариант выполняется один раз для прогрева.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "stats.benchmark", matches = "true")
+@SpringBootTest(properties = {"spring.config.additional-location=file:src/main/resources/",
+        "spring.sql.init.mode=never", "stats.parallel.enabled=true"})
+class ParallelStatsBenchmarkTest {
+    private static final int ITERATIONS = 5;
+
+    @Autowired
+    private EndpointHitRepository hitRepository;
+    @Autowired
+    private HourlyRollupRepository rollupRepository;
+    @Autowired
+    private ParallelStats parallelStats;
+
+    @Test
+    void comparesWithSingleQuery() {
+        List<LocalDateTime> range = rollupRepository.getHitsRange();
+        assumeThat(range).as("endpoint_hits пуста").isNotEmpty();
+        LocalDateTime start = range.getFirst();
+        LocalDateTime end = range.getLast();
+        assumeThat(parallelStats.getStats(start, end, UriFilter.ALL, false, false))
+                .as("интервал не делится по партициям").isPresent();
+
+        assertThat(rows(parallelStats.getStats(start, end, UriFilter.ALL, false, false).orElseThrow()))
+                .containsExactlyInAnyOrderElementsOf(rows(hitRepository.getStats(start, end, Limit.unlimited())));
+        measure("просмотры", start, end,
+                () -> hitRepository.getStats(start, end, Limit.unlimited()),
+                () -> parallelStats.getStats(start, end, UriFilter.ALL, false, false).orElseThrow());
+        measure("уникальные (оценка частями)", start, end,
+                () -> hitRepository.getUniqueStats(start, end, Limit.unlimited()),
+                () -> parallelStats.getStats(start, end, UriFilter.ALL, true, true).orElseThrow());
+    }
+
+    private static List<String> rows(List<HitCount> counts) {
+        return counts.stream()
+                .map(count -> count.getAppId() + "/" + count.getUriId() + "=" + count.getHits())
+                .toList();
+    }
+
+    private static void measure(String name, LocalDateTime start, LocalDateTime end,
+                                Supplier<List<HitCount>> single, Supplier<List<HitCount>> parallel) {
+        long singleMs = median(single);
+        long parallelMs = median(parallel);
+        log.info("Замер {} с {} по {}: один запрос {} мс, частями {} мс, ускорение {}",
+                name, start, end, singleMs, parallelMs,
+                String.format("%.2f", (double) singleMs / Math.max(parallelMs, 1)));
+    }
+
+    private static long median(Supplier<List<HitCount>> query) {
+        query.get();
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long started = System.nanoTime();
+            query.get();
+            times[i] = (System.nanoTime() - started) / 1_000_000;
+        }
+        Arrays.sort(times);
+        return times[ITERATIONS / 2];
+    }
+}
@@ -0,0 +1,87 @@
+package ewm.stats.parallel;
+
+import ewm.stats.HitCount;
+import ewm.stats.UriFilter;
+import ewm.stats.partition.HitPartitionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ParallelStatsTest {
+    private static final LocalDateTime START = LocalDateTime.of(2026, 10, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2026, 10, 4, 12, 0);
+
+    private final ParallelStatsRepository repository = mock(ParallelStatsRepository.class);
+    private final HitPartitionRepository partitionRepository = mock(HitPartitionRepository.class);
+    private ParallelStats parallelStats;
+
+    @AfterEach
+    void shutdown() {
+        parallelStats.shutdown();
+    }
+
+    @Test
+    void countsExactUniqueInOneQuery() {
+        parallelStats = parallelStats(2);
+
+        assertThat(parallelStats.getStats(START, END, UriFilter.ALL, true, false)).isEmpty();
+        verify(repository, never()).findVisitors(any(), any(), any());
+    }
+
+    @Test
+    void doesNotStartQueuedRangesAfterFailure() throws InterruptedException {
+        parallelStats = parallelStats(1);
+        when(repository.findCounts(any(), any())).thenThrow(new IllegalStateException("ошибка БД"));
+
+        assertThatThrownBy(() -> parallelStats.getStats(START, END, UriFilter.ALL, false, false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("ошибка БД");
+        Thread.sleep(200);
+        verify(repository, times(1)).findCounts(any(), any());
+    }
+
+    @Test
+    void interruptsRunningRangesAfterFailure() throws InterruptedException {
+        parallelStats = parallelStats(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(repository.findCounts(any(), any())).thenAnswer(invocation -> {
+            SubRange range = invocation.getArgument(0);
+            if (range.from().equals(START)) {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return List.<HitCount>of();
+            }
+            started.await();
+            throw new IllegalStateException("ошибка БД");
+        });
+
+        assertThatThrownBy(() -> parallelStats.getStats(START, END, UriFilter.ALL, false, false))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private ParallelStats parallelStats(int threads) {
+        when(partitionRepository.findPartitionDays()).thenReturn(List.of(LocalDate.of(2026, 10, 1),
+                LocalDate.of(2026, 10, 2), LocalDate.of(2026, 10, 3), LocalDate.of(2026, 10, 4)));
+        return new ParallelStats(repository, partitionRepository, true, threads, 10, 2, 32);
+    }
+}
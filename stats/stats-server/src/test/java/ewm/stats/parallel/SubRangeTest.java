@@ -0,0 +1,80 @@
+package ewm.stats.parallel;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubRangeTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 2);
+
+    @Test
+    void splitsByPartitionDays() {
+        LocalDateTime start = DAY.atTime(6, 0);
+        LocalDateTime end = DAY.plusDays(2).atTime(18, 0);
+
+        List<SubRange> ranges = SubRange.byPartitions(start, end, List.of(DAY, DAY.plusDays(1), DAY.plusDays(2)));
+
+        assertThat(ranges).containsExactly(
+                new SubRange(start, DAY.plusDays(1).atStartOfDay(), false),
+                new SubRange(DAY.plusDays(1).atStartOfDay(), DAY.plusDays(2).atStartOfDay(), false),
+                new SubRange(DAY.plusDays(2).atStartOfDay(), end, true));
+    }
+
+    @Test
+    void coversGapsWithoutPartitionsByOneRange() {
+        LocalDateTime start = DAY.minusDays(3).atStartOfDay();
+        LocalDateTime end = DAY.plusDays(3).atStartOfDay();
+
+        List<SubRange> ranges = SubRange.byPartitions(start, end, List.of(DAY.plusDays(1), DAY));
+
+        assertThat(ranges).containsExactly(
+                new SubRange(start, DAY.atStartOfDay(), false),
+                new SubRange(DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay(), false),
+                new SubRange(DAY.plusDays(1).atStartOfDay(), DAY.plusDays(2).atStartOfDay(), false),
+                new SubRange(DAY.plusDays(2).atStartOfDay(), end, true));
+    }
+
+    @Test
+    void ignoresPartitionsOutsideRange() {
+        LocalDateTime start = DAY.atTime(1, 0);
+        LocalDateTime end = DAY.atTime(23, 0);
+
+        List<SubRange> ranges = SubRange.byPartitions(start, end,
+                List.of(DAY.minusDays(5), DAY, DAY.plusDays(5)));
+
+        assertThat(ranges).containsExactly(new SubRange(start, end, true));
+    }
+
+    @Test
+    void endsAtPartitionBoundaryInclusively() {
+        LocalDateTime start = DAY.atStartOfDay();
+        LocalDateTime end = DAY.plusDays(2).atStartOfDay();
+
+        List<SubRange> ranges = SubRange.byPartitions(start, end, List.of(DAY, DAY.plusDays(1), DAY.plusDays(2)));
+
+        assertThat(ranges).containsExactly(
+                new SubRange(start, DAY.plusDays(1).atStartOfDay(), false),
+                new SubRange(DAY.plusDays(1).atStartOfDay(), end, true));
+    }
+
+    @Test
+    void rangesAreContiguous() {
+        LocalDateTime start = DAY.minusDays(10).atTime(13, 17);
+        LocalDateTime end = DAY.plusDays(10).atTime(4, 2);
+
+        List<SubRange> ranges = SubRange.byPartitions(start, end,
+                List.of(DAY.minusDays(7), DAY.minusDays(6), DAY, DAY.plusDays(4), DAY.plusDays(10)));
+
+        assertThat(ranges.getFirst().from()).isEqualTo(start);
+        assertThat(ranges.getLast().to()).isEqualTo(end);
+        assertThat(ranges.getLast().inclusiveEnd()).isTrue();
+        for (int i = 1; i < ranges.size(); i++) {
+            assertThat(ranges.get(i).from()).isEqualTo(ranges.get(i - 1).to());
+            assertThat(ranges.get(i - 1).inclusiveEnd()).isFalse();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ewm.stats.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void emptySketchEstimatesZero() {
+        assertThat(new HyperLogLog().estimate()).isZero();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 1_000, 100_000})
+    void estimatesWithinExpectedError(int count) {
+        HyperLogLog sketch = sketch(0, count);
+
+        // 4 стандартные ошибки (~1.6% при 2^12 регистрах)
+        assertThat((double) sketch.estimate()).isCloseTo(count, within(Math.max(count * 0.065, 1)));
+    }
+
+    @Test
+    void ignoresRepeatedValues() {
+        HyperLogLog sketch = sketch(0, 1_000);
+        long estimate = sketch.estimate();
+
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add("10.0." + i / 256 + "." + i % 256);
+        }
+
+        assertThat(sketch.estimate()).isEqualTo(estimate);
+    }
+
+    @Test
+    void mergeEstimatesUnion() {
+        HyperLogLog first = sketch(0, 6_000);
+        HyperLogLog second = sketch(4_000, 10_000);
+
+        first.merge(second);
+
+        assertThat((double) first.estimate()).isCloseTo(10_000, within(650.0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 100, 50_000})
+    void roundTripsSparseAndDenseBytes(int count) {
+        HyperLogLog sketch = sketch(0, count);
+
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes[0]).isEqualTo((byte) (count < 2_000 ? 1 : 0));
+        assertThat(HyperLogLog.fromBytes(bytes).estimate()).isEqualTo(sketch.estimate());
+        assertThat(HyperLogLog.fromBytes(bytes).toBytes()).isEqualTo(bytes);
+    }
+
+    private static HyperLogLog sketch(int from, int to) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = from; i < to; i++) {
+            sketch.add("10.0." + i / 256 + "." + i % 256);
+        }
+        return sketch;
+    }
+}
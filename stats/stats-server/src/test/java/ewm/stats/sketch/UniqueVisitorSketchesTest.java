@@ -0,0 +1,72 @@
+package ewm.stats.sketch;
+
+import ewm.stats.EndpointHit;
+import ewm.stats.HitCount;
+import ewm.stats.UriFilter;
+import ewm.stats.dictionary.StatsDictionary;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class UniqueVisitorSketchesTest {
+    private static final LocalDateTime HOUR = LocalDateTime.of(2026, 10, 1, 10, 0);
+
+    private final HllSketchRepository repository = mock(HllSketchRepository.class);
+    private final UniqueVisitorSketches sketches = new UniqueVisitorSketches(repository, mock(StatsDictionary.class),
+            new TransactionTemplate(mock(PlatformTransactionManager.class)), true);
+
+    @Test
+    void countsSketchWhileItIsBeingSaved() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            saving.countDown();
+            commit.await();
+            return null;
+        }).when(repository).save(any(), any());
+        sketches.add(hits("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(sketches::flush);
+        assertThat(saving.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(estimate()).isEqualTo(3);
+        commit.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void keepsSketchInMemoryAfterFailedSave() {
+        doThrow(new IllegalStateException("БД недоступна")).when(repository).save(any(), any());
+        sketches.add(hits("10.0.0.1", "10.0.0.2"));
+
+        sketches.flush();
+        sketches.add(hits("10.0.0.3"));
+
+        assertThat(estimate()).isEqualTo(3);
+    }
+
+    private long estimate() {
+        List<HitCount> counts = sketches.getUniqueStats(HOUR, HOUR.plusHours(1), UriFilter.ALL).orElseThrow();
+        assertThat(counts).hasSize(1);
+        return counts.getFirst().getHits();
+    }
+
+    private static List<EndpointHit> hits(String... ips) {
+        return Arrays.stream(ips)
+                .map(ip -> EndpointHit.builder().appId(1).uriId(2).ip(ip).timestamp(HOUR.plusMinutes(5)).build())
+                .toList();
+    }
+}
@@ -0,0 +1,53 @@
+package ewm.stats.trending;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountMinSketchTest {
+
+    @Test
+    void countsExactlyWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+
+        sketch.add(1, 3);
+        assertThat(sketch.add(1, 2)).isEqualTo(5);
+
+        assertThat(sketch.estimate(1)).isEqualTo(5);
+        assertThat(sketch.estimate(2)).isZero();
+    }
+
+    @Test
+    void neverUnderestimatesAndStaysWithinBound() {
+        int width = 256;
+        CountMinSketch sketch = new CountMinSketch(width, 4);
+        long total = 0;
+        for (long key = 0; key < 2_000; key++) {
+            long count = key % 10 + 1;
+            sketch.add(key, count);
+            total += count;
+        }
+
+        // ошибка не больше total * e / width с вероятностью 1 - e^-4 для каждого ключа
+        long bound = (long) (total * Math.E / width);
+        int overBound = 0;
+        for (long key = 0; key < 2_000; key++) {
+            long estimate = sketch.estimate(key);
+            assertThat(estimate).isGreaterThanOrEqualTo(key % 10 + 1);
+            if (estimate - (key % 10 + 1) > bound) {
+                overBound++;
+            }
+        }
+        assertThat(overBound).isLessThan(2_000 / 20);
+    }
+
+    @Test
+    void clearResetsCounters() {
+        CountMinSketch sketch = new CountMinSketch(64, 3);
+        sketch.add(7, 10);
+
+        sketch.clear();
+
+        assertThat(sketch.estimate(7)).isZero();
+    }
+}